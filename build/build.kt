@@ -77,4 +77,20 @@ val lwjgl3 by project(path("lwjgl3"), Archetypes.JavaProject) {
 	if (SystemInfo.IS_MAC_OS) {
 		Keys.runOptions add { "-XstartOnFirstThread" }
 	}
-}
\ No newline at end of file
+}
+
+/**
+ * Headless simulation runner, for running the game economy without graphics.
+ */
+val headless by project(path("headless"), Archetypes.JavaProject) {
+	projectName set { using(caravan) { projectName.get() } }
+	projectGroup set { using(caravan) { projectGroup.get() } }
+	projectVersion set { using(caravan) { projectVersion.get() } }
+
+	libraryDependencies add { wemi.dependency("com.badlogicgames.gdx", "gdx-backend-headless", gdxVersion) }
+	libraryDependencies add { wemi.dependency("com.badlogicgames.gdx", "gdx-platform", gdxVersion, classifier = "natives-desktop") }
+
+	projectDependencies add { ProjectDependency(caravan, scope = ScopeAggregate) }
+
+	mainClass set { "caravan.HeadlessMain" }
+}
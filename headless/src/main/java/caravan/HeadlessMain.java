@@ -0,0 +1,168 @@
+package caravan;
+
+import caravan.components.CaravanC;
+import caravan.components.Components;
+import caravan.components.PositionC;
+import caravan.components.TownC;
+import caravan.services.CaravanAIService;
+import caravan.services.EntitySpawnService;
+import caravan.services.MarketBoardService;
+import caravan.services.MoveSystem;
+import caravan.services.SpatialIndexService;
+import caravan.services.TimeService;
+import caravan.services.TownSystem;
+import caravan.services.WorldService;
+import caravan.util.CSVWriter;
+import caravan.world.Merchandise;
+import caravan.world.Sprites;
+import caravan.world.Tiles;
+import caravan.world.WorldGenerator;
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.IntArray;
+import com.darkyen.retinazer.Engine;
+import com.darkyen.retinazer.Mapper;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+
+/**
+ * Caravan simulation entry point without any graphics.
+ * Generates a world from a seed, simulates it for given amount of days and writes daily economy metrics into a CSV file.
+ * Same seed gives the same results, which makes it usable for comparing economy changes.
+ *
+ * Arguments: [seed] [days] [output file]
+ */
+public final class HeadlessMain extends ApplicationAdapter {
+
+	private static final int WORLD_WIDTH = 300;
+	private static final int WORLD_HEIGHT = 300;
+	private static final int TOWN_COUNT = 24;
+	private static final int NPC_CARAVAN_COUNT = 32;
+	private static final int INITIAL_PRICE_ITERATIONS = 200;
+
+	/** Game time simulated by a single engine update. Same as the largest delta of a regular frame. */
+	private static final float STEP = 1f / 10f;
+
+	private final long seed;
+	private final int days;
+	private final String outputFile;
+
+	private HeadlessMain(long seed, int days, @NotNull String outputFile) {
+		this.seed = seed;
+		this.days = days;
+		this.outputFile = outputFile;
+	}
+
+	public static void main(String[] args) {
+		final long seed = args.length > 0 ? Long.parseLong(args[0]) : 0L;
+		final int days = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		final String outputFile = args.length > 2 ? args[2] : "simulation-" + seed + ".csv";
+
+		final HeadlessApplicationConfiguration c = new HeadlessApplicationConfiguration();
+		new HeadlessApplication(new HeadlessMain(seed, days, outputFile), c);
+	}
+
+	@Override
+	public void create() {
+		Tiles.loadClass();
+		Sprites.loadClass();
+		MathUtils.random.setSeed(seed);
+
+		final TimeService timeService = new TimeService();
+		final Engine engine = new Engine(Components.DOMAIN,
+				timeService,
+				new EntitySpawnService(),
+				new SpatialIndexService(),
+				new MoveSystem(),
+				new TownSystem(),
+				new MarketBoardService(),
+				new CaravanAIService(),
+				new WorldService(WORLD_WIDTH, WORLD_HEIGHT, Tiles.Water, false)
+		);
+
+		long startTime = System.nanoTime();
+		WorldGenerator.generateWorld(engine, seed, WORLD_WIDTH, WORLD_HEIGHT, TOWN_COUNT);
+		WorldGenerator.generateNPCCaravans(engine, NPC_CARAVAN_COUNT);
+		final int priceIterations = WorldGenerator.simulateInitialWorldPrices(engine, INITIAL_PRICE_ITERATIONS, false).size;
+		Gdx.app.log("HeadlessMain", "World " + seed + " generated in " + (System.nanoTime() - startTime) / 1_000_000L + " ms, initial prices simulated in " + priceIterations + " iterations");
+
+		final Mapper<TownC> town = engine.getMapper(TownC.class);
+		final Mapper<CaravanC> caravan = engine.getMapper(CaravanC.class);
+		final IntArray towns = engine.getEntities(Components.DOMAIN.familyWith(TownC.class, PositionC.class)).getIndices();
+		final IntArray caravans = engine.getEntities(Components.DOMAIN.familyWith(CaravanC.class)).getIndices();
+
+		startTime = System.nanoTime();
+		try (CSVWriter w = new CSVWriter(new OutputStreamWriter(new FileOutputStream(outputFile)))) {
+			w.item("day");
+			w.item("ms");
+			w.item("population");
+			w.item("townMoneyTotal");
+			w.item("townWealthAvg");
+			w.item("caravanMoneyTotal");
+			for (Merchandise m : Merchandise.VALUES) {
+				w.item(m.name);
+			}
+			w.row();
+
+			timeService.requestResume();
+			long dayStartTime = System.nanoTime();
+			while (timeService.day < days) {
+				timeService.rawDelta = STEP;
+				engine.update();
+				if (timeService.dayAdvances <= 0) {
+					continue;
+				}
+
+				final long now = System.nanoTime();
+				writeMetrics(w, timeService.day, now - dayStartTime, town, towns, caravan, caravans);
+				dayStartTime = now;
+			}
+		} catch (IOException e) {
+			Gdx.app.error("HeadlessMain", "Failed to write " + outputFile, e);
+		}
+		Gdx.app.log("HeadlessMain", "Simulated " + days + " days in " + (System.nanoTime() - startTime) / 1_000_000L + " ms, written to " + outputFile);
+
+		Gdx.app.exit();
+	}
+
+	private static void writeMetrics(@NotNull CSVWriter w, int day, long dayNanos,
+	                                 @NotNull Mapper<TownC> town, @NotNull IntArray towns,
+	                                 @NotNull Mapper<CaravanC> caravan, @NotNull IntArray caravans) throws IOException {
+		int population = 0;
+		long townMoney = 0;
+		float townWealth = 0f;
+		final float[] basePrices = new float[Merchandise.COUNT];
+		for (int i = 0; i < towns.size; i++) {
+			final TownC t = town.get(towns.get(i));
+			population += t.population;
+			townMoney += t.money;
+			townWealth += t.wealth;
+			for (Merchandise m : Merchandise.VALUES) {
+				basePrices[m.ordinal()] += t.prices.basePrice(m);
+			}
+		}
+
+		long caravanMoney = 0;
+		for (int i = 0; i < caravans.size; i++) {
+			caravanMoney += caravan.get(caravans.get(i)).money;
+		}
+
+		final int townCount = Math.max(towns.size, 1);
+		w.item(Integer.toString(day));
+		w.item(Long.toString(dayNanos / 1_000_000L));
+		w.item(Integer.toString(population));
+		w.item(Long.toString(townMoney));
+		w.item(Float.toString(townWealth / townCount));
+		w.item(Long.toString(caravanMoney));
+		for (float basePrice : basePrices) {
+			w.item(Float.toString(basePrice / townCount));
+		}
+		w.row();
+	}
+}
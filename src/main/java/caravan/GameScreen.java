@@ -1,16 +1,23 @@
 package caravan;
 
 import caravan.components.Components;
+import caravan.debug.ApplicationDebugOverlay;
+import caravan.debug.FrameProfiler;
 import caravan.debug.WorldDebugService;
 import caravan.input.GameInput;
 import caravan.services.CameraFocusSystem;
 import caravan.services.CaravanAIService;
 import caravan.services.EntitySpawnService;
 import caravan.services.CaravanAnimationService;
+import caravan.services.FastForwardService;
+import caravan.services.MarketBoardService;
+import caravan.services.MinimapService;
 import caravan.services.MoveSystem;
 import caravan.services.PlayerControlSystem;
 import caravan.services.RenderSystem;
 import caravan.services.RenderingService;
+import caravan.services.SpatialIndexService;
+import caravan.services.SpriteAnimationSystem;
 import caravan.services.StatefulService;
 import caravan.services.TimeService;
 import caravan.services.TitleRenderService;
@@ -25,8 +32,10 @@ import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.scenes.scene2d.Stage;
+import com.badlogic.gdx.utils.FloatArray;
 import com.badlogic.gdx.utils.IntArray;
 import com.darkyen.retinazer.Engine;
+import com.darkyen.retinazer.EngineService;
 import com.darkyen.retinazer.Mapper;
 import com.darkyen.retinazer.util.Mask;
 import com.esotericsoftware.kryo.io.Input;
@@ -36,16 +45,21 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.BufferedInputStream;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The screen with the actual game. Deals with setup of the engine, systems, loading, etc.
  * The gameplay is implemented inside the systems.
  */
-public final class GameScreen extends CaravanApplication.UIScreen {
+public final class GameScreen extends CaravanApplication.UIScreen implements ApplicationDebugOverlay.CommandListener {
 
 	public Engine engine;
 
 	private TimeService timeService;
+	private FastForwardService fastForwardService;
 	private CameraFocusSystem cameraFocusSystem;
 
 	private RenderingService[] renderingServices;
@@ -53,6 +67,21 @@ public final class GameScreen extends CaravanApplication.UIScreen {
 
 	private FileHandle saveFile;
 
+	/**
+	 * When not null, the world draw overlaps the simulation step: the step runs on this thread,
+	 * while the GL thread draws the state of the previous step, and both are joined before the UI is drawn.
+	 * The step is not decoupled from the frame, it still runs exactly once per frame and the frame waits for it,
+	 * only the frame time becomes max(step, world draw) instead of their sum.
+	 */
+	private @Nullable ExecutorService overlappedStepThread;
+	private final Runnable overlappedStep = this::updateEngine;
+
+	/** Timing of each service update and render, null when there is no debug overlay to show it. */
+	private EngineService[] updatedServices;
+	private FrameProfiler.Section @Nullable [] updateSections;
+	private FrameProfiler.Section @Nullable [] renderSections;
+	private long[] renderNanos;
+
 	@Override
 	public void create(@NotNull CaravanApplication application) {
 		final GameInput gameInput = new GameInput();
@@ -61,20 +90,31 @@ public final class GameScreen extends CaravanApplication.UIScreen {
 		final int worldWidth = 300;
 		final int worldHeight = 300;
 		engine = new Engine(Components.DOMAIN,
+				fastForwardService = new FastForwardService(gameInput),
 				timeService = new TimeService(gameInput),
 				new EntitySpawnService(),
+				new SpatialIndexService(),
 				new PlayerControlSystem(application, gameInput),
 				new MoveSystem(),
 				new TownSystem(),
+				new MarketBoardService(),
 				new CaravanAIService(),
 				new CaravanAnimationService(),
+				new SpriteAnimationSystem(),
 				cameraFocusSystem = new CameraFocusSystem(5f, gameInput),
 				new WorldService(worldWidth, worldHeight, Tiles.Water),
 				new RenderSystem(),
 				new TitleRenderService(),
+				new MinimapService(gameInput),
 				new WorldDebugService()
 		);
 		renderingServices = engine.getServices(RenderingService.class).toArray(new RenderingService[0]);
+		renderNanos = new long[renderingServices.length];
+		for (CaravanApplication.Screen screen : application.screens()) {
+			if (screen instanceof ApplicationDebugOverlay) {
+				initializeProfiler(((ApplicationDebugOverlay) screen).profiler);
+			}
+		}
 
 		saveFile = application.saveDir().child("caravan_save.bin");
 
@@ -86,7 +126,13 @@ public final class GameScreen extends CaravanApplication.UIScreen {
 			// Spawn NPC caravans
 			WorldGenerator.generateNPCCaravans(engine, 32);
 			// Simulate the game world a bit to initialize
-			WorldGenerator.simulateInitialWorldPrices(engine, 200, false);
+			final FloatArray convergence = WorldGenerator.simulateInitialWorldPrices(engine, 200, false);
+			Gdx.app.log("GameScreen", "Initial world prices simulated in " + convergence.size + " iterations");
+			for (CaravanApplication.Screen screen : application.screens()) {
+				if (screen instanceof ApplicationDebugOverlay) {
+					((ApplicationDebugOverlay) screen).showConvergence(convergence);
+				}
+			}
 		} else {
 			Gdx.app.log("GameScreen", "Loaded successfully");
 		}
@@ -106,29 +152,133 @@ public final class GameScreen extends CaravanApplication.UIScreen {
 	public void update(@NotNull CaravanApplication application, float delta) {
 		timeService.rawDelta = delta;
 
-		engine.update();
+		if (overlappedStepThread == null) {
+			updateEngine();
+		}
 		super.update(application, delta);
 	}
 
 	@Override
 	public void render(@NotNull CaravanApplication application) {
-		for (RenderingService service : renderingServices) {
-			service.render(CaravanApplication.batch(), frustum);
+		final RenderingService[] renderingServices = this.renderingServices;
+		final long[] renderNanos = this.renderNanos;
+		for (int i = 0; i < renderingServices.length; i++) {
+			final long start = System.nanoTime();
+			renderingServices[i].prepareRender(frustum);
+			renderNanos[i] = System.nanoTime() - start;
+		}
+
+		// Input and UI are handled only outside of this, so the step has the engine to itself
+		final Future<?> step = overlappedStepThread == null ? null : overlappedStepThread.submit(overlappedStep);
+		try {
+			final FrameProfiler.Section[] renderSections = this.renderSections;
+			for (int i = 0; i < renderingServices.length; i++) {
+				final long start = System.nanoTime();
+				renderingServices[i].render(CaravanApplication.batch(), frustum);
+				if (renderSections != null) {
+					renderSections[i].record(renderNanos[i] + System.nanoTime() - start);
+				}
+			}
+		} finally {
+			if (step != null) {
+				awaitOverlappedStep(step);
+			}
 		}
 		super.render(application);
 	}
 
+	private void initializeProfiler(@NotNull FrameProfiler profiler) {
+		final EngineService[] updatedServices = this.updatedServices = engine.getServices(EngineService.class).toArray(new EngineService[0]);
+		updateSections = new FrameProfiler.Section[updatedServices.length];
+		for (int i = 0; i < updatedServices.length; i++) {
+			updateSections[i] = profiler.section(updatedServices[i].getClass().getSimpleName());
+		}
+		renderSections = new FrameProfiler.Section[renderingServices.length];
+		for (int i = 0; i < renderingServices.length; i++) {
+			renderSections[i] = profiler.section(renderingServices[i].getClass().getSimpleName() + ".render");
+		}
+	}
+
+	/** Same as {@link Engine#update()}, but each service is timed when profiling. */
+	private void updateEngine() {
+		final FrameProfiler.Section[] updateSections = this.updateSections;
+		if (updateSections == null) {
+			engine.update();
+			return;
+		}
+		final Engine engine = this.engine;
+		final EngineService[] updatedServices = this.updatedServices;
+		engine.flush();
+		for (int i = 0; i < updatedServices.length; i++) {
+			final long start = System.nanoTime();
+			updatedServices[i].update();
+			engine.flush();
+			updateSections[i].record(System.nanoTime() - start);
+		}
+	}
+
+	private static void awaitOverlappedStep(@NotNull Future<?> step) {
+		try {
+			step.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Simulation step failed", e.getCause());
+		}
+	}
+
+	/** Switch whether the simulation step of each frame runs on another thread, overlapped with drawing the world. */
+	public void setStepOverlapsWorldDraw(boolean enabled) {
+		if (enabled == (overlappedStepThread != null)) {
+			return;
+		}
+		if (enabled) {
+			overlappedStepThread = Executors.newSingleThreadExecutor(runnable -> {
+				final Thread thread = new Thread(runnable, "Overlapped step");
+				thread.setDaemon(true);
+				return thread;
+			});
+		} else {
+			overlappedStepThread.shutdown();
+			overlappedStepThread = null;
+		}
+		Gdx.app.log("GameScreen", "Step overlapped with world draw " + (enabled ? "enabled" : "disabled"));
+	}
+
 	@Override
 	public void resize(@NotNull CaravanApplication application, int width, int height) {
 		cameraFocusSystem.screenWidth = width;
 		cameraFocusSystem.screenHeight = height;
 	}
 
+	@Override
+	public boolean onCommand(@NotNull String command) {
+		final String[] parts = command.split("\\s+");
+		if (parts.length == 2 && parts[0].equals("ff")) {
+			// Fast forward given amount of days
+			try {
+				fastForwardService.start(Integer.parseInt(parts[1]));
+			} catch (NumberFormatException e) {
+				return false;
+			}
+			return true;
+		}
+		if (parts.length == 2 && parts[0].equals("overlapstep")) {
+			// Overlap the world draw with the simulation step
+			setStepOverlapsWorldDraw(parts[1].equals("on"));
+			return true;
+		}
+		return false;
+	}
+
 	@Override
 	public void dispose() {
+		setStepOverlapsWorldDraw(false);
 		if (save(saveFile)) {
 			Gdx.app.log("GameScreen", "Saved successfully");
 		}
+		engine.getService(WorldService.class).dispose();
+		engine.getService(MinimapService.class).dispose();
 	}
 
 	private static final byte SAVE_FILE_VERSION = 1;
@@ -26,6 +26,10 @@ public final class Inputs {
 
 	public static final InputFunction NOTES = InputFunction.function("Notes", Binding.keyboard(N));
 
+	public static final InputFunction FAST_FORWARD = InputFunction.function("Fast Forward", Binding.keyboard(F));
+
+	public static final InputFunction MAP = InputFunction.function("Map", Binding.keyboard(M));
+
 	public static final InputFunction[] ALL_INPUTS = new InputFunction[] {
 			UP,
 			DOWN,
@@ -36,6 +40,8 @@ public final class Inputs {
 			SCROLL,
 			ZOOM_IN,
 			ZOOM_OUT,
-			NOTES
+			NOTES,
+			FAST_FORWARD,
+			MAP
 	};
 }
@@ -172,9 +172,7 @@ public final class TradingScreen extends CaravanApplication.UIScreen {
 		rumors.add(wealthRumor).row();
 
 		{
-			final PooledArray<Rumors.Rumor> rumors = town.rumors.rumors;
-			for (int i = 0; i < rumors.size; i++) {
-				final Rumors.Rumor rumor = rumors.get(i);
+			for (Rumors.Rumor rumor = town.rumors.newest(); rumor != null; rumor = rumor.older()) {
 
 				final String merchName = Util.getName(rumor.aboutMerchandise);
 				final String townName = Util.getName(rumor.aboutTownEntity, townMapper);
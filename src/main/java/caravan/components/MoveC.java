@@ -1,47 +1,230 @@
 package caravan.components;
 
 import caravan.util.CaravanComponent;
-import com.badlogic.gdx.utils.FloatArray;
+import caravan.util.PathFinding;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.LongArray;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import org.jetbrains.annotations.NotNull;
 
 /** A component for entities with {@link PositionC} that can move around. */
-@CaravanComponent.Serialized(name = "Move", version = 1)
+@CaravanComponent.Serialized(name = "Move", version = 2)
 public final class MoveC extends CaravanComponent {
 
+	public static final int DIRECTION_RIGHT = 0;
+	public static final int DIRECTION_LEFT = 1;
+	public static final int DIRECTION_UP = 2;
+	public static final int DIRECTION_DOWN = 3;
+
+	private static final int STEPS_PER_LONG = 32;
+
 	/**
-	 * Contains packed target info, in format:
-	 * [x0, y0, speed0, x1, y1, speed1, ..., xN, yN, speedN]
-	 * {@link caravan.services.MoveSystem} looks at the first 3 elements and moves the entity
-	 * towards x0, y0, with speed0. After the entity reaches that, the waypoint 0 is removed
-	 * and x1 becomes x0 and so on.
+	 * The path, as a sequence of single tile steps, each 2 bits ({@code DIRECTION_} constants), 32 steps per long.
+	 * Each step consists of two waypoints: the edge of the tile and the center of the next tile.
+	 * Speed of each waypoint is the {@link #speed} multiplied by the movement speed of the tile in which it starts.
+	 * {@link caravan.services.MoveSystem} moves the entity towards the current waypoint,
+	 * after the entity reaches it, the path advances to the next waypoint.
 	 */
-	public final FloatArray waypoints = new FloatArray(true, 30);
+	private final LongArray steps = new LongArray(true, 4);
+	private int stepCount = 0;
+	/** Index of the step that is being walked. */
+	private int step = 0;
+	/** Whether the tile edge of the current step has already been reached. */
+	private boolean secondHalf = false;
+	/** Where the current step started. */
+	private float fromX, fromY;
+	/** Speed of movement on tiles with movement speed 1. */
+	public float speed;
+
+	/** Append a move by one tile to the path.
+	 * @param position of the entity, used when the path is empty
+	 * @param speed of movement on tiles with movement speed 1, applies to the whole path */
+	public void addStep(@NotNull PositionC position, int direction, float speed) {
+		if (stepCount == 0) {
+			fromX = position.x;
+			fromY = position.y;
+		}
+		this.speed = speed;
+		appendStep(direction);
+	}
+
+	private void appendStep(int direction) {
+		final int index = stepCount / STEPS_PER_LONG;
+		if (index >= steps.size) {
+			steps.add(0L);
+		}
+		steps.items[index] |= ((long) direction) << ((stepCount % STEPS_PER_LONG) * 2);
+		stepCount++;
+	}
+
+	/** @return true if there is still a waypoint to move to */
+	public boolean hasWaypoints() {
+		return step < stepCount;
+	}
+
+	private int direction() {
+		return (int) (steps.items[step / STEPS_PER_LONG] >>> ((step % STEPS_PER_LONG) * 2)) & 0b11;
+	}
+
+	private static int deltaX(int direction) {
+		return direction == DIRECTION_RIGHT ? 1 : direction == DIRECTION_LEFT ? -1 : 0;
+	}
+
+	private static int deltaY(int direction) {
+		return direction == DIRECTION_UP ? 1 : direction == DIRECTION_DOWN ? -1 : 0;
+	}
+
+	private static float stepTargetX(float fromX, int direction) {
+		final int deltaX = deltaX(direction);
+		return deltaX == 0 ? fromX : MathUtils.floor(fromX) + 0.5f + deltaX;
+	}
+
+	private static float stepTargetY(float fromY, int direction) {
+		final int deltaY = deltaY(direction);
+		return deltaY == 0 ? fromY : MathUtils.floor(fromY) + 0.5f + deltaY;
+	}
+
+	public float targetX() {
+		final int direction = direction();
+		final float targetX = stepTargetX(fromX, direction);
+		if (secondHalf || deltaX(direction) == 0) {
+			return targetX;
+		}
+		// Edge of the tile
+		return MathUtils.round((fromX + targetX) * 0.5f);
+	}
+
+	public float targetY() {
+		final int direction = direction();
+		final float targetY = stepTargetY(fromY, direction);
+		if (secondHalf || deltaY(direction) == 0) {
+			return targetY;
+		}
+		// Edge of the tile
+		return MathUtils.round((fromY + targetY) * 0.5f);
+	}
+
+	/** @return speed of movement towards the current waypoint */
+	public float targetSpeed(@NotNull PathFinding.PathWorld world) {
+		int tileX = MathUtils.floor(fromX);
+		int tileY = MathUtils.floor(fromY);
+		if (secondHalf) {
+			final int direction = direction();
+			tileX += deltaX(direction);
+			tileY += deltaY(direction);
+		}
+		return world.movementSpeedMultiplier(tileX, tileY) * speed;
+	}
+
+	/** @return how long it will take to walk the rest of the path from the given position, in game seconds */
+	public float travelTime(@NotNull PathFinding.PathWorld world, float x, float y) {
+		float time = 0f;
+		float fromX = this.fromX, fromY = this.fromY;
+		boolean secondHalf = this.secondHalf;
+		for (int step = this.step; step < stepCount; step++) {
+			final int direction = (int) (steps.items[step / STEPS_PER_LONG] >>> ((step % STEPS_PER_LONG) * 2)) & 0b11;
+			final int tileX = MathUtils.floor(fromX);
+			final int tileY = MathUtils.floor(fromY);
+			final float targetX = stepTargetX(fromX, direction);
+			final float targetY = stepTargetY(fromY, direction);
+
+			if (!secondHalf) {
+				final float edgeX = deltaX(direction) == 0 ? targetX : MathUtils.round((fromX + targetX) * 0.5f);
+				final float edgeY = deltaY(direction) == 0 ? targetY : MathUtils.round((fromY + targetY) * 0.5f);
+				time += Vector2.len(edgeX - x, edgeY - y) / (world.movementSpeedMultiplier(tileX, tileY) * speed);
+				x = edgeX;
+				y = edgeY;
+			}
+			time += Vector2.len(targetX - x, targetY - y) / (world.movementSpeedMultiplier(tileX + deltaX(direction), tileY + deltaY(direction)) * speed);
+			x = targetX;
+			y = targetY;
+
+			fromX = targetX;
+			fromY = targetY;
+			secondHalf = false;
+		}
+		return time;
+	}
+
+	/** Called when the current waypoint is reached. */
+	public void advanceWaypoint() {
+		if (!secondHalf) {
+			secondHalf = true;
+			return;
+		}
+
+		final int direction = direction();
+		fromX = stepTargetX(fromX, direction);
+		fromY = stepTargetY(fromY, direction);
+		secondHalf = false;
+		step++;
+		if (step >= stepCount) {
+			clearWaypoints();
+		}
+	}
 
-	public void addWaypoint(float x, float y, float speed) {
-		waypoints.add(x, y, speed);
+	/** Stop moving. */
+	public void clearWaypoints() {
+		steps.clear();
+		stepCount = 0;
+		step = 0;
+		secondHalf = false;
 	}
 
 	@Override
 	public void reset() {
-		waypoints.clear();
+		clearWaypoints();
+		speed = 0f;
 	}
 
 	@Override
 	public void save(@NotNull Output output) {
-		output.writeInt(waypoints.size);
-		output.writeFloats(waypoints.items, 0, waypoints.size);
+		// Walked steps are not saved
+		final int remaining = stepCount - step;
+		output.writeInt(remaining);
+		if (remaining <= 0) {
+			return;
+		}
+		output.writeFloat(fromX);
+		output.writeFloat(fromY);
+		output.writeFloat(speed);
+		output.writeBoolean(secondHalf);
+		for (int i = 0; i < remaining; i += 4) {
+			int packed = 0;
+			for (int s = i; s < remaining && s < i + 4; s++) {
+				final int stepIndex = step + s;
+				final int direction = (int) (steps.items[stepIndex / STEPS_PER_LONG] >>> ((stepIndex % STEPS_PER_LONG) * 2)) & 0b11;
+				packed |= direction << ((s - i) * 2);
+			}
+			output.writeByte(packed);
+		}
 	}
 
 	@Override
 	public void load(@NotNull Input input, int version) {
-		final int waypointCount = input.readInt();
-		waypoints.clear();
-		final float[] waypointItems = waypoints.ensureCapacity(waypointCount);
-		waypoints.size = waypointCount;
-		for (int i = 0; i < waypointCount; i++) {
-			waypointItems[i] = input.readFloat();
+		clearWaypoints();
+		if (version < 2) {
+			// Old paths were stored as raw waypoints, they are dropped and the entity stops
+			final int waypointCount = input.readInt();
+			input.skip(waypointCount * 4L);
+			return;
+		}
+
+		final int remaining = input.readInt();
+		if (remaining <= 0) {
+			return;
+		}
+		fromX = input.readFloat();
+		fromY = input.readFloat();
+		speed = input.readFloat();
+		secondHalf = input.readBoolean();
+		for (int i = 0; i < remaining; i += 4) {
+			final int packed = input.readByte();
+			for (int s = i; s < remaining && s < i + 4; s++) {
+				appendStep((packed >>> ((s - i) * 2)) & 0b11);
+			}
 		}
 	}
 }
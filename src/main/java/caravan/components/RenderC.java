@@ -18,7 +18,7 @@ public final class RenderC extends CaravanComponent {
 	/** The sprite (animation) to render. */
 	@Nullable
 	public SpriteAnimation sprite;
-	/** Time already spent showing the {@link #currentFrame}. Used for {@link caravan.services.RenderSystem} housekeeping. */
+	/** Time already spent showing the {@link #currentFrame}. Used for {@link caravan.services.SpriteAnimationSystem} housekeeping. */
 	public float timeOnThisFrame;
 	/** The animation speed multiplier, applied to {@link SpriteAnimation#frameTime}. */
 	public float animationSpeed;
@@ -4,6 +4,7 @@ import caravan.CaravanApplication;
 import com.badlogic.gdx.ApplicationLogger;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input;
+import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.scenes.scene2d.ui.Label;
 import com.badlogic.gdx.scenes.scene2d.ui.ScrollPane;
@@ -11,6 +12,7 @@ import com.badlogic.gdx.scenes.scene2d.ui.Table;
 import com.badlogic.gdx.scenes.scene2d.ui.TextField;
 import com.badlogic.gdx.scenes.scene2d.ui.Value;
 import com.badlogic.gdx.utils.Align;
+import com.badlogic.gdx.utils.FloatArray;
 import com.badlogic.gdx.utils.Queue;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -23,6 +25,12 @@ public final class ApplicationDebugOverlay extends CaravanApplication.UIScreen {
 	private final GraphPane.GraphData renderedData = new GraphPane.GraphData(256, Color.BLUE, 10f, 80f, true);
 	private final GraphPane.GraphData stepTimeData = new GraphPane.GraphData(256, Color.RED, 0f, 0.1f, false);
 	private final GraphPane.GraphData memData      = new GraphPane.GraphData(256, Color.GREEN, 0f, 20000f, true);
+	private final GraphPane.GraphData convergenceData = new GraphPane.GraphData(256, Color.ORANGE, 0f, 1f, true);
+
+	/** Timing of the game frame parts, filled by the game screen. */
+	public final FrameProfiler profiler = new FrameProfiler();
+	private ProfilerPane profilerPane;
+	private FileHandle saveDir;
 
 	private Label log;
 	private ScrollPane logScroll;
@@ -35,12 +43,14 @@ public final class ApplicationDebugOverlay extends CaravanApplication.UIScreen {
 
 	@Override
 	protected void initializeUI(@NotNull CaravanApplication application,  @NotNull Table table) {
+		saveDir = application.saveDir();
 		stage.getRoot().setVisible(false);
 
 		final GraphPane grapherPane = new GraphPane();
 		grapherPane.graphs.add(renderedData);
 		grapherPane.graphs.add(stepTimeData);
 		grapherPane.graphs.add(memData);
+		grapherPane.graphs.add(convergenceData);
 
 		table.pad(10f);
 		table.align(Align.left);
@@ -52,6 +62,15 @@ public final class ApplicationDebugOverlay extends CaravanApplication.UIScreen {
 				.align(Align.left)
 				.row();
 
+		// Profiler, toggled by command
+		profilerPane = new ProfilerPane(profiler);
+		profilerPane.setVisible(false);
+		table.add(profilerPane)
+				.prefWidth(Value.percentWidth(0.3f, table))
+				.align(Align.left)
+				.padTop(5f)
+				.row();
+
 		table.add().expand().row();
 
 		// Log
@@ -79,7 +98,7 @@ public final class ApplicationDebugOverlay extends CaravanApplication.UIScreen {
 				commandEntry.setText("");
 				stage.setKeyboardFocus(null);
 
-				if (command.isEmpty()) {
+				if (command.isEmpty() || onCommand(command)) {
 					return;
 				}
 
@@ -109,6 +128,9 @@ public final class ApplicationDebugOverlay extends CaravanApplication.UIScreen {
 		if (logger instanceof ConsolePrintingLogger) {
 			Gdx.app.setApplicationLogger(((ConsolePrintingLogger) logger).parent);
 		}
+		if (profilerPane != null) {
+			profilerPane.dispose();
+		}
 		super.dispose();
 	}
 
@@ -122,6 +144,40 @@ public final class ApplicationDebugOverlay extends CaravanApplication.UIScreen {
 		super.update(application, delta);
 	}
 
+	/** Show the convergence metric history of the initial world simulation,
+	 * see {@link caravan.world.WorldGenerator#simulateInitialWorldPrices}. */
+	public void showConvergence(@NotNull FloatArray convergence) {
+		convergenceData.clear();
+		for (int i = 0; i < convergence.size; i++) {
+			convergenceData.addDataPoint(convergence.get(i));
+		}
+	}
+
+	/** Handle commands of the overlay itself.
+	 * @return true if the command was processed */
+	private boolean onCommand(@NotNull String command) {
+		final String[] parts = command.split("\\s+");
+		if (!parts[0].equals("profile")) {
+			return false;
+		}
+		if (parts.length == 1) {
+			profilerPane.setVisible(!profilerPane.isVisible());
+			return true;
+		}
+		if (parts.length == 2 && parts[1].equals("csv")) {
+			// Export the percentiles
+			final FileHandle file = saveDir.child("profile.csv");
+			try {
+				profiler.writeCSV(file.writer(false, "UTF-8"));
+				printToLog("Profile written to " + file.file().getAbsolutePath());
+			} catch (Exception e) {
+				Gdx.app.error("ApplicationDebugOverlay", "Failed to write profile to " + file, e);
+			}
+			return true;
+		}
+		return false;
+	}
+
 	@Override
 	public boolean keyDown(int keycode) {
 		if (keycode == Input.Keys.F3) {
@@ -2,8 +2,8 @@ package caravan.debug;
 
 import caravan.components.CaravanC;
 import caravan.components.Components;
-import caravan.components.PositionC;
 import caravan.components.TownC;
+import caravan.services.SpatialIndexService;
 import caravan.services.TownSystem;
 import caravan.util.Tooltip;
 import caravan.world.Merchandise;
@@ -25,7 +25,6 @@ import java.util.Comparator;
 
 import static caravan.CaravanApplication.uiSkin;
 import static caravan.util.Util.ALL_HANDLING_INPUT_LISTENER;
-import static caravan.util.Util.findClosest;
 import static caravan.util.Util.forEach;
 import static caravan.util.Util.newScrollPane;
 
@@ -41,7 +40,7 @@ public class EconomyOverviewWindow extends Window {
 	private final EntitySetView caravans;
 	private final Mapper<CaravanC> caravan;
 
-	private final Mapper<PositionC> position;
+	private final SpatialIndexService spatialIndex;
 
 	private final Array<Runnable> updateProcessors = new Array<>();
 
@@ -61,7 +60,7 @@ public class EconomyOverviewWindow extends Window {
 		town = engine.getMapper(TownC.class);
 		caravan = engine.getMapper(CaravanC.class);
 
-		position = engine.getMapper(PositionC.class);
+		spatialIndex = engine.getService(SpatialIndexService.class);
 
 		final Table everythingTable = new Table(skin);
 		add(newScrollPane(everythingTable, "light")).grow().prefWidth(600).prefHeight(500);
@@ -222,7 +221,7 @@ public class EconomyOverviewWindow extends Window {
 	}
 
 	public void refresh() {
-		int closestTown = findClosest(towns, position, worldSpaceCursor);
+		int closestTown = spatialIndex.nearest(worldSpaceCursor.x, worldSpaceCursor.y, Float.POSITIVE_INFINITY, e -> town.getOrNull(e) != null);
 		if (closestTown == -1) {
 			this.selectedTown = null;
 		} else {
@@ -6,6 +6,7 @@ import caravan.components.Components;
 import caravan.components.PlayerC;
 import caravan.components.PositionC;
 import caravan.components.RenderC;
+import caravan.services.SpatialIndexService;
 import caravan.world.Sprites;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.math.Vector2;
@@ -36,7 +37,6 @@ import java.lang.reflect.Modifier;
 import java.util.function.Function;
 
 import static caravan.util.Util.ALL_HANDLING_INPUT_LISTENER;
-import static caravan.util.Util.findClosest;
 import static caravan.util.Util.newScrollPane;
 
 /**
@@ -86,7 +86,7 @@ public final class EntityEditorWindow extends Window {
 			refreshEntityView();
 		});
 		button(root, "Nearest", () -> {
-			selectedEntity = findClosest(engine.getEntities(), engine.getMapper(PositionC.class), nearestPointCursor);
+			selectedEntity = engine.getService(SpatialIndexService.class).nearest(nearestPointCursor.x, nearestPointCursor.y, Float.POSITIVE_INFINITY, null);
 			refreshEntityView();
 		});
 		button(root, "Drop Beacon", () -> {
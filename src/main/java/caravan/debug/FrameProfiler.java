@@ -0,0 +1,119 @@
+package caravan.debug;
+
+import caravan.util.CSVWriter;
+import com.badlogic.gdx.utils.Array;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects how long named sections of each frame (like updates and renders of services) take.
+ * Each section keeps a ring buffer of its latest samples. The buffer is written without locks by a single thread,
+ * which may be the simulation thread, and read by the debug overlay.
+ */
+public final class FrameProfiler {
+
+	/** How many latest samples are kept for each section, power of two. */
+	public static final int HISTORY = 256;
+
+	private final Array<Section> sections = new Array<>(true, 32, Section.class);
+
+	/** @return the section with given name, created if it does not exist yet. Call from the render thread only. */
+	public @NotNull Section section(@NotNull String name) {
+		for (Section section : sections) {
+			if (section.name.equals(name)) {
+				return section;
+			}
+		}
+		final Section section = new Section(name, sections.size);
+		sections.add(section);
+		return section;
+	}
+
+	/** @return all sections, in the order in which they were created */
+	public @NotNull Array<Section> sections() {
+		return sections;
+	}
+
+	/** Write the p50 and p99 of each section, in milliseconds, as CSV. */
+	public void writeCSV(@NotNull Writer out) throws IOException {
+		final float[] samples = new float[HISTORY];
+		try (CSVWriter w = new CSVWriter(out)) {
+			w.item("section");
+			w.item("samples");
+			w.item("p50_ms");
+			w.item("p99_ms");
+			w.item("max_ms");
+			w.row();
+
+			for (Section section : sections) {
+				final int count = section.sortedSamples(samples);
+				w.item(section.name);
+				w.item(Integer.toString(count));
+				w.item(Float.toString(percentile(samples, count, 0.5f)));
+				w.item(Float.toString(percentile(samples, count, 0.99f)));
+				w.item(Float.toString(count == 0 ? 0f : samples[count - 1]));
+				w.row();
+			}
+		}
+	}
+
+	/** @param sorted ascending samples
+	 * @return the nearest-rank percentile of the first count samples, 0 when there are none */
+	public static float percentile(float @NotNull [] sorted, int count, float percentile) {
+		if (count <= 0) {
+			return 0f;
+		}
+		final int rank = (int) Math.ceil(percentile * count) - 1;
+		return sorted[Math.max(0, Math.min(rank, count - 1))];
+	}
+
+	/** A single measured part of the frame. */
+	public static final class Section {
+		public final @NotNull String name;
+		/** Order in which the section was created. */
+		public final int index;
+
+		/** Sample durations in milliseconds, sample n is at n % {@link #HISTORY}. */
+		private final float[] samples = new float[HISTORY];
+		/** How many samples were ever written. */
+		private final AtomicInteger written = new AtomicInteger();
+
+		Section(@NotNull String name, int index) {
+			this.name = name;
+			this.index = index;
+		}
+
+		/** Add a sample. Each section must be recorded from a single thread. */
+		public void record(long nanos) {
+			final int n = written.get();
+			samples[n & (HISTORY - 1)] = nanos / 1_000_000f;
+			written.lazySet(n + 1);
+		}
+
+		/** @return how many samples were ever recorded */
+		public int written() {
+			return written.get();
+		}
+
+		/** @return the sample recorded as n-th, valid for the last {@link #HISTORY} samples */
+		public float sample(int n) {
+			return samples[n & (HISTORY - 1)];
+		}
+
+		/** Copy the latest samples into out, sorted ascending.
+		 * @return how many samples were copied */
+		public int sortedSamples(float @NotNull [] out) {
+			final int written = this.written.get();
+			final int count = Math.min(Math.min(written, HISTORY), out.length);
+			for (int i = 0; i < count; i++) {
+				out[i] = samples[(written - 1 - i) & (HISTORY - 1)];
+			}
+			Arrays.sort(out, 0, count);
+			return count;
+		}
+	}
+}
@@ -11,6 +11,8 @@ import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.scenes.scene2d.ui.Widget;
 import com.badlogic.gdx.utils.Array;
 
+import java.util.Arrays;
+
 /**
  * Draws graphs.
  */
@@ -72,11 +74,14 @@ public final class GraphPane extends Widget {
         private final Color color;
         private float min;
         private float max;
+        /** Max given at construction, which automax grows from. */
+        private final float initialMax;
         private final boolean automax;
 
         public GraphData(int memory, Color color, float min, float max, boolean automax) {
             this.min = min;
             this.max = max;
+            this.initialMax = max;
             this.data = new float[memory];
             this.color = color;
             this.automax = automax;
@@ -88,6 +93,13 @@ public final class GraphPane extends Widget {
             if(automax && point > max)max = point;
         }
 
+        /** Remove all data points. */
+        public void clear() {
+            Arrays.fill(data, min);
+            end = 0;
+            max = initialMax;
+        }
+
         private float getPointPercentage(int i){
             float point = data[(end + i + data.length) % data.length];
             return (point - min) / (max - min);
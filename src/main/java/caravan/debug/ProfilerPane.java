@@ -0,0 +1,226 @@
+package caravan.debug;
+
+import caravan.CaravanApplication;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.scenes.scene2d.InputEvent;
+import com.badlogic.gdx.scenes.scene2d.ui.Label;
+import com.badlogic.gdx.scenes.scene2d.ui.Skin;
+import com.badlogic.gdx.scenes.scene2d.ui.Table;
+import com.badlogic.gdx.scenes.scene2d.ui.Value;
+import com.badlogic.gdx.scenes.scene2d.ui.Widget;
+import com.badlogic.gdx.scenes.scene2d.utils.ClickListener;
+import com.badlogic.gdx.utils.Align;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Shows the {@link FrameProfiler} sections as a stacked graph of the latest frames
+ * and a table of their percentiles, which can be sorted by clicking the header.
+ */
+final class ProfilerPane extends Table implements Disposable {
+
+	private static final int SORT_NAME = 0;
+	private static final int SORT_LAST = 1;
+	private static final int SORT_P50 = 2;
+	private static final int SORT_P99 = 3;
+	private static final String[] COLUMN_NAMES = {"Section", "Last", "p50", "p99"};
+
+	/** How often are the table statistics refreshed, in frames. */
+	private static final int REFRESH_INTERVAL = 30;
+	/** Height of the graph, in milliseconds. */
+	private static final float GRAPH_MAX_MS = 1000f / 30f;
+
+	private final FrameProfiler profiler;
+	private final StackedGraph graph;
+	private final Table statsTable;
+	private final Label[] headers = new Label[COLUMN_NAMES.length];
+	private final Array<Label> statsLabels = new Array<>(Label.class);
+	private final Array<Color> sectionColors = new Array<>(Color.class);
+
+	private int sortColumn = SORT_P99;
+	private int framesToRefresh = 0;
+
+	/** Statistics of each section by section index. */
+	private float[] lastMs = new float[0], p50Ms = new float[0], p99Ms = new float[0];
+	private final Array<FrameProfiler.Section> sorted = new Array<>(FrameProfiler.Section.class);
+	private final float[] refresh_samples = new float[FrameProfiler.HISTORY];
+
+	ProfilerPane(@NotNull FrameProfiler profiler) {
+		super(CaravanApplication.uiSkin());
+		this.profiler = profiler;
+		final Skin skin = getSkin();
+
+		add(graph = new StackedGraph())
+				.prefWidth(Value.percentWidth(1f, this))
+				.prefHeight(120f)
+				.growX()
+				.row();
+
+		statsTable = new Table(skin);
+		statsTable.background(skin.getDrawable("ui15-faded"));
+		add(statsTable).growX().row();
+
+		for (int c = 0; c < COLUMN_NAMES.length; c++) {
+			final int column = c;
+			headers[c] = new Label(COLUMN_NAMES[c], skin, "tooltip");
+			headers[c].addListener(new ClickListener() {
+				@Override
+				public void clicked(InputEvent event, float x, float y) {
+					sortColumn = column;
+					refresh();
+				}
+			});
+		}
+	}
+
+	@Override
+	public void act(float delta) {
+		super.act(delta);
+		if (!isVisible() || --framesToRefresh > 0) {
+			return;
+		}
+		framesToRefresh = REFRESH_INTERVAL;
+		refresh();
+	}
+
+	private void refresh() {
+		final Array<FrameProfiler.Section> sections = profiler.sections();
+		if (lastMs.length < sections.size) {
+			lastMs = new float[sections.size];
+			p50Ms = new float[sections.size];
+			p99Ms = new float[sections.size];
+		}
+		final float[] samples = this.refresh_samples;
+		for (FrameProfiler.Section section : sections) {
+			final int written = section.written();
+			lastMs[section.index] = written == 0 ? 0f : section.sample(written - 1);
+			final int count = section.sortedSamples(samples);
+			p50Ms[section.index] = FrameProfiler.percentile(samples, count, 0.5f);
+			p99Ms[section.index] = FrameProfiler.percentile(samples, count, 0.99f);
+		}
+
+		final Array<FrameProfiler.Section> sorted = this.sorted;
+		sorted.clear();
+		sorted.addAll(sections);
+		switch (sortColumn) {
+			case SORT_NAME:
+				sorted.sort((a, b) -> a.name.compareTo(b.name));
+				break;
+			case SORT_LAST:
+				sorted.sort((a, b) -> Float.compare(lastMs[b.index], lastMs[a.index]));
+				break;
+			case SORT_P50:
+				sorted.sort((a, b) -> Float.compare(p50Ms[b.index], p50Ms[a.index]));
+				break;
+			default:
+				sorted.sort((a, b) -> Float.compare(p99Ms[b.index], p99Ms[a.index]));
+				break;
+		}
+
+		rebuildStatsTable();
+	}
+
+	private void rebuildStatsTable() {
+		final Table table = this.statsTable;
+		table.clearChildren();
+		for (int c = 0; c < COLUMN_NAMES.length; c++) {
+			final Label header = headers[c];
+			header.setText(c == sortColumn ? COLUMN_NAMES[c] + " v" : COLUMN_NAMES[c]);
+			table.add(header).pad(2f, 5f, 2f, 5f).align(c == 0 ? Align.left : Align.right);
+		}
+		table.row();
+
+		final Array<Label> labels = this.statsLabels;
+		int l = 0;
+		for (FrameProfiler.Section section : sorted) {
+			final Color color = sectionColor(section.index);
+			l = addStat(table, labels, l, section.name, color, Align.left);
+			l = addStat(table, labels, l, formatMs(lastMs[section.index]), color, Align.right);
+			l = addStat(table, labels, l, formatMs(p50Ms[section.index]), color, Align.right);
+			l = addStat(table, labels, l, formatMs(p99Ms[section.index]), color, Align.right);
+			table.row();
+		}
+	}
+
+	private int addStat(@NotNull Table table, @NotNull Array<Label> labels, int l, @NotNull String text, @NotNull Color color, int align) {
+		if (l >= labels.size) {
+			labels.add(new Label("", getSkin(), "log"));
+		}
+		final Label label = labels.get(l);
+		label.setText(text);
+		label.setColor(color);
+		table.add(label).pad(0f, 5f, 0f, 5f).align(align);
+		return l + 1;
+	}
+
+	private static @NotNull String formatMs(float ms) {
+		return (Math.round(ms * 100f) / 100f) + " ms";
+	}
+
+	private @NotNull Color sectionColor(int index) {
+		while (sectionColors.size <= index) {
+			// Golden angle, so that neighbors differ
+			sectionColors.add(new Color(1f, 1f, 1f, 0.8f).fromHsv((sectionColors.size * 137.5f) % 360f, 0.7f, 0.95f));
+		}
+		return sectionColors.get(index);
+	}
+
+	@Override
+	public void dispose() {
+		graph.shapeRenderer.dispose();
+	}
+
+	/** Each frame is a column, made of the durations of all sections stacked on each other. */
+	private final class StackedGraph extends Widget {
+
+		private final ShapeRenderer shapeRenderer = new ShapeRenderer();
+
+		@Override
+		public void draw(Batch batch, float parentAlpha) {
+			validate();
+			batch.end();
+
+			Gdx.gl.glEnable(GL20.GL_BLEND);
+			final ShapeRenderer shapeRenderer = this.shapeRenderer;
+			shapeRenderer.setTransformMatrix(batch.getTransformMatrix());
+			shapeRenderer.setProjectionMatrix(batch.getProjectionMatrix());
+			shapeRenderer.begin(ShapeRenderer.ShapeType.Filled);
+			shapeRenderer.setColor(0.2f, 0.2f, 0.2f, 0.6f);
+			shapeRenderer.rect(getX(), getY(), getWidth(), getHeight());
+
+			final Array<FrameProfiler.Section> sections = profiler.sections();
+			final float columnWidth = getWidth() / FrameProfiler.HISTORY;
+			final float msHeight = getHeight() / GRAPH_MAX_MS;
+			for (int column = 0; column < FrameProfiler.HISTORY; column++) {
+				// Latest frame on the right
+				final int age = FrameProfiler.HISTORY - column;
+				float stacked = 0f;
+				for (FrameProfiler.Section section : sections) {
+					final int written = section.written();
+					if (age > written) {
+						continue;
+					}
+					final float height = Math.min(section.sample(written - age) * msHeight, getHeight() - stacked);
+					if (height <= 0f) {
+						continue;
+					}
+					shapeRenderer.setColor(sectionColor(section.index));
+					shapeRenderer.rect(getX() + column * columnWidth, getY() + stacked, columnWidth, height);
+					stacked += height;
+				}
+			}
+
+			// 60 FPS budget line
+			shapeRenderer.setColor(Color.RED);
+			shapeRenderer.rect(getX(), getY() + msHeight * (1000f / 60f), getWidth(), 1f);
+			shapeRenderer.end();
+
+			batch.begin();
+		}
+	}
+}
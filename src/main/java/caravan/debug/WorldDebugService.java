@@ -44,7 +44,7 @@ public class WorldDebugService extends EntitySystem implements RenderingService,
 	public void initialize() {
 		tileSelector = new ItemSelector<>(
 				CaravanApplication.uiSkin(), "Tiles",
-				tile -> engine.getService(WorldService.class).tiles.set((int) Math.floor(worldSpaceCursor.x), (int) Math.floor(worldSpaceCursor.y), tile),
+				tile -> engine.getService(WorldService.class).setTile((int) Math.floor(worldSpaceCursor.x), (int) Math.floor(worldSpaceCursor.y), tile),
 				(tile, batch, x, y, size) -> {
 					final TextureRegion tex = tile.getBaseTexture();
 					if (tex != null) {
@@ -92,9 +92,12 @@ public class WorldDebugService extends EntitySystem implements RenderingService,
 	}
 
 	@Override
-	public void render(@NotNull Batch batch, @NotNull Rectangle frustum) {
+	public void prepareRender(@NotNull Rectangle frustum) {
 		frustum.getCenter(worldSpaceCursor);
+	}
 
+	@Override
+	public void render(@NotNull Batch batch, @NotNull Rectangle frustum) {
 		final boolean tiles = tileSelector.isVisible();
 		final boolean entities = entityEditorWindow.isVisible();
 
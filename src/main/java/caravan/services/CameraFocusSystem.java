@@ -216,7 +216,7 @@ public final class CameraFocusSystem extends EntityProcessorSystem implements Re
     }
 
     @Override
-    public void render(@NotNull Batch batch, @NotNull Rectangle frustum) {
+    public void prepareRender(@NotNull Rectangle frustum) {
         final Rectangle currentFraming = this.zoomedCurrentFraming;
         currentFraming.set(this.currentFraming);
         // Apply zoom
@@ -240,7 +240,10 @@ public final class CameraFocusSystem extends EntityProcessorSystem implements Re
         frustum.width = frustumCorner.x - frustum.x;
         frustum.height = frustumCorner.y - frustum.y;
         lastFrustum.set(frustum);
+    }
 
+    @Override
+    public void render(@NotNull Batch batch, @NotNull Rectangle frustum) {
         batch.setProjectionMatrix(viewport.getCamera().combined);
     }
 
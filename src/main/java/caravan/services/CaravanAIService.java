@@ -11,14 +11,23 @@ import caravan.util.PriceMemory;
 import caravan.world.Merchandise;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.Pool;
+import com.darkyen.retinazer.EntitySystem;
 import com.darkyen.retinazer.Mapper;
 import com.darkyen.retinazer.Wire;
-import com.darkyen.retinazer.systems.EntityProcessorSystem;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
 
 /**
  * System that controls NPC caravans.
+ * Caravans are only looked at when they are due to arrive at their destination, which is tracked in a priority queue
+ * by game time, so caravans that are on the road cost nothing.
+ * Caravans that arrive at the same town in the same update are processed together.
  */
-public final class CaravanAIService extends EntityProcessorSystem {
+public final class CaravanAIService extends EntitySystem {
 
 	@Wire
 	private Mapper<PositionC> position;
@@ -37,6 +46,45 @@ public final class CaravanAIService extends EntityProcessorSystem {
 	private TimeService timeService;
 	@Wire
 	private WorldService worldService;
+	@Wire
+	private MarketBoardService marketBoard;
+	@Wire
+	private MoveSystem moveSystem;
+
+	/** How long to wait before a caravan which had nowhere to go tries again, in game seconds. */
+	private static final float RETRY_DELAY = 1f;
+	/** Caravans are never scheduled sooner than this, in game seconds, so that they can't be processed twice in one update. */
+	private static final float MIN_DELAY = 0.01f;
+
+	/** Binary min-heap of caravans by the game time at which they should be processed. */
+	private double[] queueTime = new double[64];
+	private int[] queueEntity = new int[64];
+	private int queueSize = 0;
+	/** For each entity the time for which it is scheduled, NaN if it is not scheduled.
+	 * Queue entries with a different time are stale and ignored. */
+	private double[] scheduledTime = new double[64];
+	{
+		Arrays.fill(scheduledTime, Double.NaN);
+	}
+	/** For detecting when the set of caravans may have changed. */
+	private int lastEntityCount = -1;
+	private int lastScanDay = Integer.MIN_VALUE;
+	private double lastTime = Double.NEGATIVE_INFINITY;
+
+	/** Towns with arrived caravans, in order of arrival. */
+	private final IntArray arrivalTowns = new IntArray();
+	/** Caravans that arrived to a town (key) in this update. */
+	private final IntMap<IntArray> arrivals = new IntMap<>();
+	private final Pool<IntArray> arrivalsPool = new Pool<IntArray>() {
+		@Override
+		protected IntArray newObject() {
+			return new IntArray();
+		}
+	};
+	/** Merchandise to buy by each caravan in the processed batch, null if it does not buy anything. */
+	private Merchandise[] batchTrade = new Merchandise[16];
+	/** Town to which will each caravan in the processed batch go, if it trades. */
+	private int[] batchTradeTown = new int[16];
 
 	public CaravanAIService() {
 		super(Components.DOMAIN.familyWith(PositionC.class, MoveC.class, CaravanC.class, CaravanAIC.class));
@@ -44,136 +92,301 @@ public final class CaravanAIService extends EntityProcessorSystem {
 
 	@Override
 	public void update() {
-		if (timeService.simulating) {
-			super.update();
+		if (!timeService.simulating) {
+			return;
 		}
-	}
 
-	@Override
-	protected void process(int entity) {
-		final MoveC move = this.move.get(entity);
-		if (move.waypoints.size > 0) {
-			// Still has somewhere to go
-			return;
+		final double now = timeService.gameTime();
+		final IntArray entities = getEntities().getIndices();
+		if (now < lastTime) {
+			// Time went backwards, a game was loaded, start over
+			queueSize = 0;
+			Arrays.fill(scheduledTime, Double.NaN);
+			lastEntityCount = -1;
+		}
+		if (entities.size != lastEntityCount || timeService.day != lastScanDay) {
+			// Caravans may have been added, make sure that all are scheduled. Done at least once a day for good measure.
+			lastEntityCount = entities.size;
+			lastScanDay = timeService.day;
+			for (int i = 0; i < entities.size; i++) {
+				final int entity = entities.get(i);
+				if (entity >= scheduledTime.length || Double.isNaN(scheduledTime[entity])) {
+					schedule(entity, now);
+				}
+			}
+		}
+		lastTime = now;
+
+		// Group the due caravans that have arrived by town
+		while (queueSize > 0 && queueTime[0] <= now) {
+			final double time = queueTime[0];
+			final int entity = queueEntity[0];
+			dequeue();
+			if (entity >= scheduledTime.length || scheduledTime[entity] != time) {
+				// Stale entry
+				continue;
+			}
+			scheduledTime[entity] = Double.NaN;
+			if (this.caravanAi.getOrNull(entity) == null || this.move.getOrNull(entity) == null || this.caravan.getOrNull(entity) == null) {
+				// No longer a caravan
+				continue;
+			}
+
+			final MoveC move = this.move.get(entity);
+			if (move.hasWaypoints()) {
+				// Still has somewhere to go, check again when it should be there
+				scheduleArrival(entity, now, move);
+				continue;
+			}
+
+			final int arrivalTown = arrivalTown(entity);
+			if (arrivalTown == -1) {
+				// This is probably our spawn point, move towards the nearest town
+				final PositionC position = this.position.get(entity);
+				goToTown(entity, -1, townSystem.getNearestTown(position, Float.POSITIVE_INFINITY, -1));
+				continue;
+			}
+
+			IntArray townArrivals = arrivals.get(arrivalTown);
+			if (townArrivals == null) {
+				townArrivals = arrivalsPool.obtain();
+				arrivals.put(arrivalTown, townArrivals);
+				arrivalTowns.add(arrivalTown);
+			}
+			townArrivals.add(entity);
 		}
 
-		// This caravan has arrived.
+		for (int i = 0; i < arrivalTowns.size; i++) {
+			final int townEntity = arrivalTowns.get(i);
+			final IntArray townArrivals = arrivals.remove(townEntity);
+			processArrivals(townEntity, townArrivals);
+			townArrivals.clear();
+			arrivalsPool.free(townArrivals);
+		}
+		arrivalTowns.clear();
+	}
+
+	/** Find the town at which the caravan is.
+	 * @return town entity or -1 if there is no such town */
+	private int arrivalTown(int entity) {
 		final PositionC position = this.position.get(entity);
-		final CaravanC caravan = this.caravan.get(entity);
-		final CaravanAIC caravanAi = this.caravanAi.get(entity);
+		// Usually the caravan is where it wanted to go, which is faster to check
+		final int targetTown = this.caravanAi.get(entity).targetTown;
+		if (targetTown != -1) {
+			final PositionC targetTownPosition = this.position.getOrNull(targetTown);
+			if (targetTownPosition != null && this.town.getOrNull(targetTown) != null
+					&& PositionC.manhattanDistance(position, targetTownPosition) < 1.5f) {
+				return targetTown;
+			}
+		}
+		return townSystem.getNearbyTown(position);
+	}
+
+	/** Process caravans which have arrived to the given town. */
+	private void processArrivals(int townEntity, @NotNull IntArray caravans) {
+		final TownC town = this.town.get(townEntity);
+		final int today = timeService.day;
+
+		if (batchTrade.length < caravans.size) {
+			batchTrade = new Merchandise[MathUtils.nextPowerOfTwo(caravans.size)];
+			batchTradeTown = new int[batchTrade.length];
+		}
+		final Merchandise[] batchTrade = this.batchTrade;
+		final int[] batchTradeTown = this.batchTradeTown;
 
-		final int nearbyTown = townSystem.getNearbyTown(position);
-		final int nextTown;
-		if (nearbyTown != -1) {
-			final TownC town = this.town.get(nearbyTown);
-			town.rumors.addRandomPriceRumors(caravan.priceMemory, town, nearbyTown, timeService.day);
-			final PriceMemory priceMemory = caravan.priceMemory;
+		// Share rumors and sell everything that makes profit
+		for (int i = 0; i < caravans.size; i++) {
+			final CaravanC caravan = this.caravan.get(caravans.get(i));
+			town.rumors.addRandomPriceRumors(caravan.priceMemory, town, townEntity, today);
 
-			// Sell everything that makes profit
 			for (Merchandise m : Merchandise.VALUES) {
 				final short buyPrice = caravan.inventoryPriceBuyMemory[m.ordinal()];
 				while (caravan.inventory.get(m) > 0 && town.realSellPrice(m) > buyPrice) {
 					TradingScreen.performSell(town, caravan, m, true);
 				}
 			}
+		}
 
-			// Pick stuff to buy here and a destination
-			final int memoryCapacity = priceMemory.capacity();
-			final int noOlderThanDay = timeService.day - 7;
-
-			int bestProfitMemorySlot = -1;
-			Merchandise bestProfitMerchandise = null;
-			int bestProfit = 5;
-
-			for (int memorySlot = 0; memorySlot < memoryCapacity; memorySlot++) {
-				if (!priceMemory.isMemorySlotValid(memorySlot, noOlderThanDay, nearbyTown)) {
-					continue;
-				}
+		// Pick stuff to buy here and a destination, all against the same prices
+		for (int i = 0; i < caravans.size; i++) {
+			final CaravanC caravan = this.caravan.get(caravans.get(i));
+			batchTrade[i] = null;
+			batchTradeTown[i] = -1;
+			pickTrade(town, townEntity, caravan, batchTrade, batchTradeTown, i);
+		}
 
-				for (Merchandise m : Merchandise.VALUES) {
-					if (!m.tradeable) {
-						continue;
-					}
-
-					final int localBuyPrice = town.prices.buyPrice(m);
-					final int remoteSellPrice = priceMemory.sellPrice(memorySlot, m);
-					final int couldBuy = Math.min(caravan.money / localBuyPrice, 10);
-					final int totalProfit = couldBuy * remoteSellPrice;
-					if (totalProfit > bestProfit) {
-						bestProfit = totalProfit;
-						bestProfitMemorySlot = memorySlot;
-						bestProfitMerchandise = m;
-					}
-				}
-			}
+		// Buy in the order of arrival and go
+		for (int i = 0; i < caravans.size; i++) {
+			final int entity = caravans.get(i);
+			final CaravanC caravan = this.caravan.get(entity);
+			final CaravanAIC caravanAi = this.caravanAi.get(entity);
 
-			if (bestProfitMemorySlot != -1) {
+			final Merchandise trade = batchTrade[i];
+			final int nextTown;
+			if (trade != null) {
 				// Buy stuff and go there.
 				int bought = 0;
-				while (bought < 10 && TradingScreen.performBuy(town, caravan, bestProfitMerchandise, true)) {
+				while (bought < 10 && TradingScreen.performBuy(town, caravan, trade, true)) {
 					// Buying everything, but not too much.
 					bought++;
 				}
-				nextTown = priceMemory.townEntity(bestProfitMemorySlot);
+				nextTown = batchTradeTown[i];
 				caravanAi.currentActivity = CaravanAIC.Activity.TRADING_SINGLE_GOOD;
-				caravanAi.tradedMerchandise = bestProfitMerchandise;
+				caravanAi.tradedMerchandise = trade;
 			} else {
-				// Pick a random town and go there
-				final int[] closestNeighbors = town.closestNeighbors;
-				final int offset = MathUtils.random.nextInt(closestNeighbors.length);
-				int bestKnownOption = -1;
-				int bestExplorationOption = -1;
-				for (int i = 0; i < closestNeighbors.length; i++) {
-					final int neighbor = closestNeighbors[(i + offset) % closestNeighbors.length];
-					if (neighbor == caravanAi.previousTown) {
-						continue;
-					}
-					final int slot = priceMemory.validSlotForTown(neighbor, timeService.day - 10);
-					if (slot == -1) {
-						bestExplorationOption = neighbor;
-					} else {
-						bestKnownOption = neighbor;
-					}
-				}
+				nextTown = pickNextTown(town, townEntity, caravan.priceMemory, caravanAi, this.position.get(entity));
+			}
+			batchTrade[i] = null;
 
-				if (bestKnownOption != -1 && bestExplorationOption != -1) {
-					// Pick randomly
-					if (MathUtils.randomBoolean()) {
-						caravanAi.currentActivity = CaravanAIC.Activity.EXPLORING;
-						nextTown = bestExplorationOption;
-					} else {
-						caravanAi.currentActivity = CaravanAIC.Activity.LOOKING_FOR_A_GOOD_DEAL;
-						nextTown = bestKnownOption;
-					}
-				} else if (bestExplorationOption != -1) {
-					caravanAi.currentActivity = CaravanAIC.Activity.EXPLORING;
-					nextTown = bestExplorationOption;
-				} else if (bestKnownOption != -1) {
-					caravanAi.currentActivity = CaravanAIC.Activity.LOOKING_FOR_A_GOOD_DEAL;
-					nextTown = bestKnownOption;
-				} else {
-					Gdx.app.log("CaravanAIService", "Town has no neighbors");
-					nextTown = townSystem.getNearestTown(position, Float.POSITIVE_INFINITY, nearbyTown);
-					caravanAi.currentActivity = CaravanAIC.Activity.LOOKING_FOR_A_GOOD_DEAL;
-				}
+			caravan.priceMemory.remember(marketBoard.snapshot(townEntity, town, today));
+			goToTown(entity, townEntity, nextTown);
+		}
+	}
+
+	private final int[] pickTrade_buyAmounts = new int[Merchandise.COUNT];
+	private final int[] pickTrade_buyPrices = new int[Merchandise.COUNT];
+
+	/** Find the most profitable merchandise to buy here and where to sell it and store it at {@code index}. */
+	private void pickTrade(@NotNull TownC town, int townEntity, @NotNull CaravanC caravan,
+	                       @NotNull Merchandise @NotNull [] trade, int @NotNull [] tradeTown, int index) {
+		final int[] buyAmounts = pickTrade_buyAmounts;
+		final int[] buyPrices = pickTrade_buyPrices;
+		for (Merchandise m : Merchandise.TRADEABLE) {
+			final int localBuyPrice = town.prices.buyPrice(m);
+			buyPrices[m.ordinal()] = localBuyPrice;
+			buyAmounts[m.ordinal()] = Math.max(Math.min(caravan.money / localBuyPrice, 10), 0);
+		}
+
+		final PriceMemory priceMemory = caravan.priceMemory;
+		final int best = priceMemory.bestSpread(buyAmounts, buyPrices, 5, timeService.day - 7, townEntity);
+		if (best != -1) {
+			trade[index] = Merchandise.VALUES[best % Merchandise.COUNT];
+			tradeTown[index] = priceMemory.townEntity(best / Merchandise.COUNT);
+		}
+	}
+
+	/** Pick a town to go to when there is nothing to trade. */
+	private int pickNextTown(@NotNull TownC town, int townEntity, @NotNull PriceMemory priceMemory, @NotNull CaravanAIC caravanAi, @NotNull PositionC position) {
+		// Pick a random town and go there
+		final int[] closestNeighbors = town.closestNeighbors;
+		final int offset = closestNeighbors.length == 0 ? 0 : MathUtils.random.nextInt(closestNeighbors.length);
+		int bestKnownOption = -1;
+		int bestExplorationOption = -1;
+		for (int i = 0; i < closestNeighbors.length; i++) {
+			final int neighbor = closestNeighbors[(i + offset) % closestNeighbors.length];
+			if (neighbor == caravanAi.previousTown) {
+				continue;
 			}
+			final int slot = priceMemory.validSlotForTown(neighbor, timeService.day - 10);
+			if (slot == -1) {
+				bestExplorationOption = neighbor;
+			} else {
+				bestKnownOption = neighbor;
+			}
+		}
 
-			priceMemory.remember(timeService.day, nearbyTown, town);
+		if (bestKnownOption != -1 && bestExplorationOption != -1) {
+			// Pick randomly
+			if (MathUtils.randomBoolean()) {
+				caravanAi.currentActivity = CaravanAIC.Activity.EXPLORING;
+				return bestExplorationOption;
+			} else {
+				caravanAi.currentActivity = CaravanAIC.Activity.LOOKING_FOR_A_GOOD_DEAL;
+				return bestKnownOption;
+			}
+		} else if (bestExplorationOption != -1) {
+			caravanAi.currentActivity = CaravanAIC.Activity.EXPLORING;
+			return bestExplorationOption;
+		} else if (bestKnownOption != -1) {
+			caravanAi.currentActivity = CaravanAIC.Activity.LOOKING_FOR_A_GOOD_DEAL;
+			return bestKnownOption;
 		} else {
-			// This is probably our spawn point, move towards the nearest town
-			nextTown = townSystem.getNearestTown(position, Float.POSITIVE_INFINITY, -1);
+			Gdx.app.log("CaravanAIService", "Town has no neighbors");
+			caravanAi.currentActivity = CaravanAIC.Activity.LOOKING_FOR_A_GOOD_DEAL;
+			return townSystem.getNearestTown(position, Float.POSITIVE_INFINITY, townEntity);
 		}
+	}
+
+	/** Process the caravan at given game time. Replaces the previous schedule of the caravan. */
+	private void schedule(int entity, double time) {
+		if (entity >= scheduledTime.length) {
+			final int oldLength = scheduledTime.length;
+			scheduledTime = Arrays.copyOf(scheduledTime, MathUtils.nextPowerOfTwo(entity + 1));
+			Arrays.fill(scheduledTime, oldLength, scheduledTime.length, Double.NaN);
+		}
+		scheduledTime[entity] = time;
+
+		if (queueSize == queueTime.length) {
+			queueTime = Arrays.copyOf(queueTime, queueSize * 2);
+			queueEntity = Arrays.copyOf(queueEntity, queueSize * 2);
+		}
+		// Sift up
+		int i = queueSize++;
+		while (i > 0) {
+			final int parent = (i - 1) >>> 1;
+			if (queueTime[parent] <= time) {
+				break;
+			}
+			queueTime[i] = queueTime[parent];
+			queueEntity[i] = queueEntity[parent];
+			i = parent;
+		}
+		queueTime[i] = time;
+		queueEntity[i] = entity;
+	}
+
+	/** Schedule the caravan for when it should arrive at the end of its path. */
+	private void scheduleArrival(int entity, double now, @NotNull MoveC move) {
+		float travelTime = move.hasWaypoints() ? moveSystem.travelTime(this.position.get(entity), move) : RETRY_DELAY;
+		if (!(travelTime >= MIN_DELAY)) {
+			// Also catches NaN
+			travelTime = MIN_DELAY;
+		}
+		schedule(entity, now + travelTime);
+	}
+
+	/** Remove the head of the queue. */
+	private void dequeue() {
+		final int size = --queueSize;
+		final double time = queueTime[size];
+		final int entity = queueEntity[size];
+		// Sift down
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && queueTime[child + 1] < queueTime[child]) {
+				child++;
+			}
+			if (time <= queueTime[child]) {
+				break;
+			}
+			queueTime[i] = queueTime[child];
+			queueEntity[i] = queueEntity[child];
+			i = child;
+		}
+		queueTime[i] = time;
+		queueEntity[i] = entity;
+	}
 
+	private void goToTown(int entity, int currentTown, int nextTown) {
 		if (nextTown == -1) {
 			// I have got nowhere to go! Hopefully this will pass.
 			Gdx.app.log("CaravanAIService", "Caravan has nowhere to go");
+			schedule(entity, timeService.gameTime() + RETRY_DELAY);
 			return;
 		}
 
-		caravanAi.previousTown = nearbyTown;
+		final CaravanAIC caravanAi = this.caravanAi.get(entity);
+		caravanAi.previousTown = currentTown;
 		caravanAi.targetTown = nextTown;
 
+		final PositionC position = this.position.get(entity);
 		final PositionC nextTownPosition = this.position.get(nextTown);
-		worldService.addMovePathTo(position, move, caravan.speed, MathUtils.floor(nextTownPosition.x), MathUtils.floor(nextTownPosition.y));
+		final MoveC move = this.move.get(entity);
+		worldService.addMovePathTo(position, move, this.caravan.get(entity).speed, MathUtils.floor(nextTownPosition.x), MathUtils.floor(nextTownPosition.y));
+		scheduleArrival(entity, timeService.gameTime(), move);
 	}
 }
@@ -31,9 +31,9 @@ public class CaravanAnimationService extends EntityProcessorSystem {
         final RenderC renderer = rendererMapper.get(entity);
         final MoveC move = moveMapper.get(entity);
         final PositionC position = positionMapper.get(entity);
-        if (move.waypoints.size >= 3) {
-            final float deltaX = move.waypoints.get(0) - position.x;
-            final float deltaY = move.waypoints.get(1) - position.y;
+        if (move.hasWaypoints()) {
+            final float deltaX = move.targetX() - position.x;
+            final float deltaY = move.targetY() - position.y;
 
             if (deltaX > 0) {
                 renderer.set(CARAVAN_RIGHT);
@@ -0,0 +1,158 @@
+package caravan.services;
+
+import caravan.CaravanApplication;
+import caravan.Inputs;
+import caravan.input.GameInput;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.scenes.scene2d.Actor;
+import com.badlogic.gdx.scenes.scene2d.Stage;
+import com.badlogic.gdx.scenes.scene2d.Touchable;
+import com.badlogic.gdx.scenes.scene2d.ui.Container;
+import com.badlogic.gdx.scenes.scene2d.ui.Label;
+import com.badlogic.gdx.scenes.scene2d.ui.Skin;
+import com.badlogic.gdx.scenes.scene2d.ui.Table;
+import com.badlogic.gdx.scenes.scene2d.ui.TextButton;
+import com.badlogic.gdx.scenes.scene2d.utils.ChangeListener;
+import com.badlogic.gdx.utils.Align;
+import com.darkyen.retinazer.Engine;
+import com.darkyen.retinazer.EngineService;
+import com.darkyen.retinazer.Wire;
+import org.jetbrains.annotations.NotNull;
+
+import static caravan.CaravanApplication.uiSkin;
+
+/**
+ * Skips ahead in game time by running the simulation systems ({@link MoveSystem}, {@link TownSystem}
+ * and {@link CaravanAIService}) in fixed steps, as many as fit into {@link #FRAME_BUDGET_NANOS} per frame.
+ * Rendering is therefore throttled to about one frame per budget while fast forwarding.
+ *
+ * Must be registered before {@link TimeService}, so that the regular frame step comes after the fixed steps.
+ */
+public final class FastForwardService implements EngineService, UIService {
+
+	/** Game time simulated by a single fixed step. Same as the largest delta of a regular frame. */
+	private static final float STEP = 1f / 10f;
+	/** How much real time can be spent simulating in a single frame. */
+	private static final long FRAME_BUDGET_NANOS = 50_000_000L;
+	/** How many days are skipped when triggered through {@link Inputs#FAST_FORWARD}. */
+	private static final int DEFAULT_DAYS = 7;
+
+	@Wire
+	private Engine engine;
+	@Wire
+	private TimeService timeService;
+	@Wire
+	private MoveSystem moveSystem;
+	@Wire
+	private TownSystem townSystem;
+	@Wire
+	private CaravanAIService caravanAIService;
+
+	private int startDay;
+	private int targetDay = -1;
+	private long startTimeNanos;
+
+	private Actor overlay;
+	private Label progressLabel;
+
+	public FastForwardService(@NotNull GameInput gameInput) {
+		gameInput.use(Inputs.FAST_FORWARD, (times, pressed) -> {
+			if (pressed) {
+				if (isRunning()) {
+					cancel();
+				} else {
+					start(DEFAULT_DAYS);
+				}
+				return true;
+			}
+			return false;
+		});
+	}
+
+	@Override
+	public void createUI(@NotNull CaravanApplication application, @NotNull Stage stage) {
+		final Skin skin = uiSkin();
+		final Table table = new Table(skin);
+		table.background("ui9");
+
+		progressLabel = new Label("", skin);
+		final TextButton cancelButton = new TextButton("Cancel", skin);
+		cancelButton.pad(0, 10f, 0, 10f);
+		cancelButton.addListener(new ChangeListener() {
+			@Override
+			public void changed(ChangeEvent event, Actor actor) {
+				cancel();
+			}
+		});
+		table.add(progressLabel).pad(10f);
+		table.add(cancelButton).pad(10f);
+
+		final Container<Table> container = new Container<>(table);
+		container.setFillParent(true);
+		container.align(Align.top).padTop(20f);
+		container.setTouchable(Touchable.childrenOnly);
+		container.setVisible(false);
+		stage.addActor(container);
+		overlay = container;
+	}
+
+	/** Start skipping given amount of days ahead, starting from now.
+	 * The game is resumed, if it was paused, pausing it again pauses the fast forward as well. */
+	public void start(int days) {
+		if (days <= 0) {
+			return;
+		}
+		startDay = timeService.day;
+		targetDay = startDay + days;
+		startTimeNanos = System.nanoTime();
+		timeService.requestResume();
+	}
+
+	/** Stop fast forwarding. The game continues at normal speed. */
+	public void cancel() {
+		if (isRunning()) {
+			Gdx.app.log("FastForwardService", "Fast forward cancelled at day " + timeService.day);
+		}
+		targetDay = -1;
+	}
+
+	public boolean isRunning() {
+		return targetDay != -1;
+	}
+
+	/** @return [0, 1] how much of the requested days has already been simulated */
+	public float progress() {
+		if (!isRunning()) {
+			return 0f;
+		}
+		final float done = (timeService.day - startDay) + timeService.timeOfDay;
+		return Math.min(done / (targetDay - startDay), 1f);
+	}
+
+	@Override
+	public void update() {
+		overlay.setVisible(isRunning());
+		if (!isRunning() || !timeService.simulating) {
+			return;
+		}
+
+		final long frameEnd = System.nanoTime() + FRAME_BUDGET_NANOS;
+		do {
+			timeService.advance(STEP);
+			// Flush like Engine.update() does, so that entity and component changes of a step are seen by the next one
+			moveSystem.update();
+			engine.flush();
+			townSystem.update();
+			engine.flush();
+			caravanAIService.update();
+			engine.flush();
+		} while (timeService.day < targetDay && System.nanoTime() < frameEnd);
+
+		progressLabel.setText("Fast forward: day " + timeService.day + " of " + targetDay + " (" + Math.round(progress() * 100f) + "%)");
+
+		if (timeService.day >= targetDay) {
+			Gdx.app.log("FastForwardService", "Simulated " + (targetDay - startDay) + " days in " + (System.nanoTime() - startTimeNanos) / 1_000_000L + " ms");
+			targetDay = -1;
+		}
+	}
+}
@@ -14,6 +14,8 @@ import java.util.Iterator;
 public abstract class Id<This extends Id<This>> {
 
 	public final short id;
+	/** Index of this in {@link Registry#getDense(int)}, valid only through {@link Registry#denseIndex(Id)}. */
+	private int denseIndex = -1;
 
 	@SuppressWarnings("unchecked")
 	protected Id(int id, @NotNull Registry<This> registry) {
@@ -23,6 +25,12 @@ public abstract class Id<This extends Id<This>> {
 		registry.register((This) this, sId);
 	}
 
+	/** Hash by ID, so that hash based collections have the same iteration order on each run. */
+	@Override
+	public int hashCode() {
+		return id;
+	}
+
 	public static final class Registry<IdCarrier extends Id<IdCarrier>> implements Iterable<IdCarrier> {
 
 		private final Bag<IdCarrier> registered = new Bag<>();
@@ -76,11 +84,20 @@ public abstract class Id<This extends Id<This>> {
 			return array().get(index);
 		}
 
+		/** @return index of the given registered item, such that {@code getDense(denseIndex(item)) == item} */
+		public int denseIndex(@NotNull IdCarrier item) {
+			array();
+			return ((Id<?>) item).denseIndex;
+		}
+
 		private Array<IdCarrier> array() {
 			final Array<IdCarrier> dense = this.registeredDense;
 			if (!registeredDenseSorted) {
 				registeredDenseSorted = true;
 				dense.sort(ID_COMPARATOR);
+				for (int i = 0; i < dense.size; i++) {
+					((Id<?>) dense.get(i)).denseIndex = i;
+				}
 			}
 			return dense;
 		}
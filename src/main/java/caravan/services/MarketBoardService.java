@@ -0,0 +1,73 @@
+package caravan.services;
+
+import caravan.components.Components;
+import caravan.components.TownC;
+import caravan.util.PriceMemory;
+import caravan.util.PriceSnapshot;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntMap;
+import com.darkyen.retinazer.EntitySystem;
+import com.darkyen.retinazer.Mapper;
+import com.darkyen.retinazer.Wire;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Shared board of town prices.
+ * {@link TownSystem} publishes a {@link PriceSnapshot} of each town once per day, on the day tick,
+ * and all caravans that visit the town that day remember the same snapshot,
+ * instead of each {@link PriceMemory} holding its own copy of the prices.
+ * Price data therefore grows with towns, not with caravans.
+ *
+ * The snapshot is intentionally stale within the day: caravans remember the prices from the start of the day,
+ * without the trades that happened since, including their own.
+ * Caravans still only know the prices of towns they have visited (or heard of), the board only deduplicates them.
+ */
+public final class MarketBoardService extends EntitySystem {
+
+	@Wire
+	private Mapper<TownC> townMapper;
+
+	/** Latest snapshot of each town. */
+	private final IntMap<PriceSnapshot> latest = new IntMap<>();
+	private final IntArray update_removed = new IntArray();
+
+	public MarketBoardService() {
+		super(Components.DOMAIN.familyWith(TownC.class));
+	}
+
+	@Override
+	public void update() {
+		if (latest.size <= getEntities().getIndices().size) {
+			return;
+		}
+		// Some towns were removed
+		final IntArray removed = this.update_removed;
+		final IntMap.Keys keys = latest.keys();
+		while (keys.hasNext) {
+			final int entity = keys.next();
+			if (!townMapper.has(entity)) {
+				removed.add(entity);
+			}
+		}
+		for (int i = 0; i < removed.size; i++) {
+			latest.remove(removed.get(i));
+		}
+		removed.clear();
+	}
+
+	/** Publish the current prices of the town for the given day. Called by {@link TownSystem} on each day tick. */
+	public void publish(int townEntity, @NotNull TownC town, int day) {
+		latest.put(townEntity, PriceSnapshot.of(townEntity, day, town));
+	}
+
+	/** @return snapshot of the town prices published today, published now if the town has none yet */
+	public @NotNull PriceSnapshot snapshot(int townEntity, @NotNull TownC town, int today) {
+		PriceSnapshot snapshot = latest.get(townEntity);
+		if (snapshot == null) {
+			// Before the first day tick, for example right after the world was generated or loaded
+			snapshot = PriceSnapshot.of(townEntity, today, town);
+			latest.put(townEntity, snapshot);
+		}
+		return snapshot;
+	}
+}
@@ -0,0 +1,242 @@
+package caravan.services;
+
+import caravan.CaravanApplication;
+import caravan.Inputs;
+import caravan.components.CaravanC;
+import caravan.components.Components;
+import caravan.components.PlayerC;
+import caravan.components.PositionC;
+import caravan.components.TownC;
+import caravan.input.GameInput;
+import caravan.world.Tile;
+import caravan.world.WorldAttribute;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.scenes.scene2d.Stage;
+import com.badlogic.gdx.scenes.scene2d.Touchable;
+import com.badlogic.gdx.scenes.scene2d.ui.Container;
+import com.badlogic.gdx.scenes.scene2d.ui.Widget;
+import com.badlogic.gdx.utils.Align;
+import com.badlogic.gdx.utils.BufferUtils;
+import com.badlogic.gdx.utils.IntArray;
+import com.darkyen.retinazer.EntitySetView;
+import com.darkyen.retinazer.EntitySystem;
+import com.darkyen.retinazer.Mapper;
+import com.darkyen.retinazer.Wire;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Overview map of the whole world, one pixel per tile, with markers of towns and caravans.
+ * Tile colors are kept in a {@link Pixmap} and a {@link Texture}. Changed tiles only grow a dirty rectangle,
+ * which is written and uploaded when the map is drawn, so a hidden map costs nothing.
+ */
+public final class MinimapService extends EntitySystem implements UIService, WorldService.TileListener {
+
+	/** Longer side of the map, in UI units. */
+	private static final float MAP_SIZE = 240f;
+	private static final float TOWN_MARKER_SIZE = 5f;
+	private static final float CARAVAN_MARKER_SIZE = 3f;
+	private static final Color TOWN_COLOR = new Color(0.95f, 0.8f, 0.3f, 1f);
+	private static final Color CARAVAN_COLOR = new Color(0.9f, 0.9f, 0.9f, 1f);
+	private static final Color PLAYER_COLOR = new Color(0.9f, 0.2f, 0.2f, 1f);
+
+	@Wire
+	private WorldService world;
+	@Wire
+	private Mapper<PositionC> position;
+	@Wire
+	private Mapper<PlayerC> player;
+
+	private EntitySetView towns;
+	private EntitySetView caravans;
+
+	private @Nullable Container<MinimapWidget> minimap;
+
+	private @Nullable Pixmap pixmap;
+	private @Nullable Texture texture;
+
+	/** Region of tiles whose pixels have to be written and uploaded, inclusive, empty when min > max. */
+	private int dirtyMinX, dirtyMinY, dirtyMaxX, dirtyMaxY;
+
+	private @NotNull ByteBuffer upload_pixels = BufferUtils.newByteBuffer(64 * 4);
+
+	public MinimapService(@NotNull GameInput gameInput) {
+		super(Components.DOMAIN.familyWith(PositionC.class));
+		gameInput.use(Inputs.MAP, (times, pressed) -> {
+			if (pressed && minimap != null) {
+				minimap.setVisible(!minimap.isVisible());
+				return true;
+			}
+			return false;
+		});
+		tilesChanged();
+	}
+
+	@Override
+	public void initialize() {
+		towns = engine.getEntities(Components.DOMAIN.familyWith(TownC.class, PositionC.class));
+		caravans = engine.getEntities(Components.DOMAIN.familyWith(CaravanC.class, PositionC.class));
+		world.addTileListener(this);
+	}
+
+	@Override
+	public void createUI(@NotNull CaravanApplication application, @NotNull Stage stage) {
+		final Container<MinimapWidget> container = new Container<>(new MinimapWidget());
+		container.setFillParent(true);
+		container.align(Align.topRight).pad(10f);
+		container.setTouchable(Touchable.disabled);
+		container.setVisible(false);
+		stage.addActor(container);
+		minimap = container;
+	}
+
+	@Override
+	public void update() {
+		// Everything happens when drawn
+	}
+
+	@Override
+	public void tileChanged(int x, int y) {
+		dirtyMinX = Math.min(dirtyMinX, x);
+		dirtyMinY = Math.min(dirtyMinY, y);
+		dirtyMaxX = Math.max(dirtyMaxX, x);
+		dirtyMaxY = Math.max(dirtyMaxY, y);
+	}
+
+	@Override
+	public void tilesChanged() {
+		dirtyMinX = dirtyMinY = Integer.MIN_VALUE / 2;
+		dirtyMaxX = dirtyMaxY = Integer.MAX_VALUE / 2;
+	}
+
+	private void clearDirty() {
+		dirtyMinX = dirtyMinY = Integer.MAX_VALUE;
+		dirtyMaxX = dirtyMaxY = Integer.MIN_VALUE;
+	}
+
+	/** @return the texture of the map with all changes uploaded */
+	private @NotNull Texture updateTexture() {
+		final WorldAttribute<Tile> tiles = world.tiles;
+		Pixmap pixmap = this.pixmap;
+		Texture texture = this.texture;
+		final boolean recreate = pixmap == null || pixmap.getWidth() != tiles.width || pixmap.getHeight() != tiles.height;
+		if (recreate) {
+			dispose();
+			pixmap = this.pixmap = new Pixmap(tiles.width, tiles.height, Pixmap.Format.RGBA8888);
+			tilesChanged();
+		}
+
+		final int x0 = Math.max(dirtyMinX, 0);
+		final int y0 = Math.max(dirtyMinY, 0);
+		final int x1 = Math.min(dirtyMaxX, tiles.width - 1);
+		final int y1 = Math.min(dirtyMaxY, tiles.height - 1);
+		clearDirty();
+		if (x0 > x1 || y0 > y1) {
+			assert texture != null;
+			return texture;
+		}
+
+		// Pixmap rows go from the top, world from the bottom
+		final int width = tiles.width;
+		final ByteBuffer pixels = pixmap.getPixels();
+		for (int y = y0; y <= y1; y++) {
+			pixels.position(((tiles.height - 1 - y) * width + x0) * 4);
+			for (int x = x0; x <= x1; x++) {
+				final int color = tiles.get(x, y).mapColor;
+				pixels.put((byte) (color >>> 24));
+				pixels.put((byte) (color >>> 16));
+				pixels.put((byte) (color >>> 8));
+				pixels.put((byte) color);
+			}
+		}
+		pixels.clear();
+
+		if (recreate) {
+			texture = this.texture = new Texture(pixmap);
+			return texture;
+		}
+		assert texture != null;
+
+		// Upload only the changed rows of the changed columns
+		final int rowBytes = (x1 - x0 + 1) * 4;
+		final int rows = y1 - y0 + 1;
+		ByteBuffer upload = this.upload_pixels;
+		if (upload.capacity() < rowBytes * rows) {
+			upload = this.upload_pixels = BufferUtils.newByteBuffer(rowBytes * rows);
+		}
+		upload.clear();
+		final int topRow = tiles.height - 1 - y1;
+		final ByteBuffer source = pixels.duplicate();
+		for (int row = topRow; row < topRow + rows; row++) {
+			final int start = (row * width + x0) * 4;
+			source.limit(start + rowBytes).position(start);
+			upload.put(source);
+		}
+		upload.flip();
+
+		texture.bind();
+		Gdx.gl.glPixelStorei(GL20.GL_UNPACK_ALIGNMENT, 1);
+		Gdx.gl.glTexSubImage2D(GL20.GL_TEXTURE_2D, 0, x0, topRow, x1 - x0 + 1, rows, GL20.GL_RGBA, GL20.GL_UNSIGNED_BYTE, upload);
+		return texture;
+	}
+
+	/** Free the map texture. */
+	public void dispose() {
+		if (texture != null) {
+			texture.dispose();
+			texture = null;
+		}
+		if (pixmap != null) {
+			pixmap.dispose();
+			pixmap = null;
+		}
+	}
+
+	private final class MinimapWidget extends Widget {
+
+		private final TextureRegion white = CaravanApplication.uiSkin().getRegion("white");
+
+		@Override
+		public float getPrefWidth() {
+			return world.width >= world.height ? MAP_SIZE : MAP_SIZE * world.width / world.height;
+		}
+
+		@Override
+		public float getPrefHeight() {
+			return world.height >= world.width ? MAP_SIZE : MAP_SIZE * world.height / world.width;
+		}
+
+		@Override
+		public void draw(Batch batch, float parentAlpha) {
+			validate();
+			final float x = getX(), y = getY(), width = getWidth(), height = getHeight();
+			batch.setColor(1f, 1f, 1f, parentAlpha);
+			batch.draw(updateTexture(), x, y, width, height);
+
+			final float scaleX = width / world.width;
+			final float scaleY = height / world.height;
+			drawMarkers(batch, towns.getIndices(), TOWN_COLOR, TOWN_COLOR, TOWN_MARKER_SIZE, x, y, scaleX, scaleY, parentAlpha);
+			drawMarkers(batch, caravans.getIndices(), CARAVAN_COLOR, PLAYER_COLOR, CARAVAN_MARKER_SIZE, x, y, scaleX, scaleY, parentAlpha);
+			batch.setColor(Color.WHITE);
+		}
+
+		private void drawMarkers(@NotNull Batch batch, @NotNull IntArray entities, @NotNull Color color, @NotNull Color playerColor, float size,
+		                         float x, float y, float scaleX, float scaleY, float parentAlpha) {
+			for (int i = 0; i < entities.size; i++) {
+				final int entity = entities.get(i);
+				final PositionC position = MinimapService.this.position.get(entity);
+				final Color c = player.has(entity) ? playerColor : color;
+				batch.setColor(c.r, c.g, c.b, c.a * parentAlpha);
+				batch.draw(white, x + position.x * scaleX - size * 0.5f, y + position.y * scaleY - size * 0.5f, size, size);
+			}
+		}
+	}
+}
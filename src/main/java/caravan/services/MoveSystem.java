@@ -3,17 +3,21 @@ package caravan.services;
 import caravan.components.Components;
 import caravan.components.MoveC;
 import caravan.components.PositionC;
+import caravan.util.PathFinding;
 import com.badlogic.gdx.math.MathUtils;
-import com.badlogic.gdx.math.Vector2;
-import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntArray;
 import com.darkyen.retinazer.*;
-import com.darkyen.retinazer.systems.EntityProcessorSystem;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Arrays;
+
 /**
  * System that moves entities with {@link MoveC} and {@link PositionC} as they desire.
+ *
+ * Current movement segments of all moving entities are gathered into parallel arrays
+ * and advanced together, only entities that reach their waypoint go back to their {@link MoveC} for the next one.
  */
-public final class MoveSystem extends EntityProcessorSystem {
+public final class MoveSystem extends EntitySystem {
 
     @Wire
     private Mapper<PositionC> positionMapper;
@@ -22,6 +26,24 @@ public final class MoveSystem extends EntityProcessorSystem {
 
     @Wire
     private TimeService simulation;
+    @Wire
+    private SpatialIndexService spatialIndex;
+    @Wire
+    private WorldService worldService;
+
+    /** Movement state of moving entities, indexed by slot. */
+    private int[] movingEntity = new int[64];
+    private float[] movingX = new float[64];
+    private float[] movingY = new float[64];
+    private float[] targetX = new float[64];
+    private float[] targetY = new float[64];
+    private float[] speed = new float[64];
+    /** How much time the entity in the slot still has to move in this update. */
+    private float[] time = new float[64];
+    /** Slots which have reached their waypoint in the current pass. */
+    private int[] reachedSlots = new int[64];
+    /** Slots which are still moving in the current pass. */
+    private int[] activeSlots = new int[64];
 
     public MoveSystem() {
         super(Components.DOMAIN.familyWith(PositionC.class, MoveC.class));
@@ -29,68 +51,115 @@ public final class MoveSystem extends EntityProcessorSystem {
 
     @Override
     public void update() {
-        if (simulation.gameDelta > 0f) {
-            super.update();
+        final float delta = simulation.gameDelta;
+        if (delta <= 0f) {
+            return;
         }
-    }
 
-    private final Vector2 tmp_move = new Vector2();
+        final PathFinding.PathWorld world = worldService.defaultPathWorld;
 
-    @Override
-    protected void process(int entity) {
-        float delta = simulation.gameDelta;
-
-        final PositionC position = positionMapper.get(entity);
-        final FloatArray path = moveMapper.get(entity).waypoints;
-
-        while (path.size >= 3) {
-            final float targetX = path.get(0);
-            final float targetY = path.get(1);
-            final float speed = path.get(2);
-
-            final float maxPossibleMove = speed * delta;
-            final float maxPossibleMove2 = maxPossibleMove * maxPossibleMove;
-
-            final Vector2 requiredMove = tmp_move.set(targetX - position.x, targetY - position.y);
-            final float requiredMoveLen2 = requiredMove.len2();
-            if (maxPossibleMove2 >= requiredMoveLen2) {
-                // Full move is possible
-                position.x = targetX;
-                position.y = targetY;
-                // Move done, prepare move moving
-                path.removeRange(0, 2);
-                delta -= Math.sqrt(requiredMoveLen2) / speed;
-            } else {
-                // Only part of the move is possible
-                final float requiredMoveScale = maxPossibleMove / (float) Math.sqrt(requiredMoveLen2);
-                requiredMove.scl(requiredMoveScale);
-                position.x += requiredMove.x;
-                position.y += requiredMove.y;
-                break; // No more moving
+        // Gather
+        final IntArray entities = getEntities().getIndices();
+        ensureCapacity(entities.size);
+        final int[] movingEntity = this.movingEntity;
+        final float[] movingX = this.movingX, movingY = this.movingY;
+        final float[] targetX = this.targetX, targetY = this.targetY, speed = this.speed, time = this.time;
+        final int[] activeSlots = this.activeSlots, reachedSlots = this.reachedSlots;
+        int count = 0;
+        for (int i = 0; i < entities.size; i++) {
+            final int entity = entities.get(i);
+            final MoveC move = moveMapper.get(entity);
+            if (!move.hasWaypoints()) {
+                continue;
+            }
+            final PositionC position = positionMapper.get(entity);
+            movingEntity[count] = entity;
+            movingX[count] = position.x;
+            movingY[count] = position.y;
+            targetX[count] = move.targetX();
+            targetY[count] = move.targetY();
+            speed[count] = move.targetSpeed(world);
+            time[count] = delta;
+            activeSlots[count] = count;
+            count++;
+        }
+
+        // Move, until everyone runs out of time or waypoints
+        int activeCount = count;
+        while (activeCount > 0) {
+            int reachedCount = 0;
+            for (int i = 0; i < activeCount; i++) {
+                final int slot = activeSlots[i];
+                final float moveX = targetX[slot] - movingX[slot];
+                final float moveY = targetY[slot] - movingY[slot];
+                final float maxPossibleMove = speed[slot] * time[slot];
+                final float requiredMoveLen2 = moveX * moveX + moveY * moveY;
+                if (maxPossibleMove * maxPossibleMove >= requiredMoveLen2) {
+                    // Full move is possible
+                    movingX[slot] = targetX[slot];
+                    movingY[slot] = targetY[slot];
+                    time[slot] -= (float) Math.sqrt(requiredMoveLen2) / speed[slot];
+                    reachedSlots[reachedCount++] = slot;
+                } else {
+                    // Only part of the move is possible
+                    final float requiredMoveScale = maxPossibleMove / (float) Math.sqrt(requiredMoveLen2);
+                    movingX[slot] += moveX * requiredMoveScale;
+                    movingY[slot] += moveY * requiredMoveScale;
+                }
+            }
+
+            // Prepare next waypoints of those that have reached theirs
+            activeCount = 0;
+            for (int i = 0; i < reachedCount; i++) {
+                final int slot = reachedSlots[i];
+                final MoveC move = moveMapper.get(movingEntity[slot]);
+                move.advanceWaypoint();
+                if (move.hasWaypoints()) {
+                    targetX[slot] = move.targetX();
+                    targetY[slot] = move.targetY();
+                    speed[slot] = move.targetSpeed(world);
+                    activeSlots[activeCount++] = slot;
+                }
             }
         }
+
+        // Scatter
+        for (int slot = 0; slot < count; slot++) {
+            final int entity = movingEntity[slot];
+            final PositionC position = positionMapper.get(entity);
+            position.x = movingX[slot];
+            position.y = movingY[slot];
+            spatialIndex.moved(entity, position);
+        }
     }
 
-    public static void addTileMoveWaypoint(@NotNull PositionC position, @NotNull MoveC move, int deltaX, int deltaY, float speedTile0, float speedTile1) {
-        float previousX;
-        float previousY;
-        if (move.waypoints.size > 0) {
-            previousX = move.waypoints.items[move.waypoints.size - 3];
-            previousY = move.waypoints.items[move.waypoints.size - 2];
-        } else {
-            previousX = position.x;
-            previousY = position.y;
+    private void ensureCapacity(int capacity) {
+        if (movingEntity.length >= capacity) {
+            return;
         }
+        capacity = MathUtils.nextPowerOfTwo(capacity);
+        movingEntity = Arrays.copyOf(movingEntity, capacity);
+        movingX = Arrays.copyOf(movingX, capacity);
+        movingY = Arrays.copyOf(movingY, capacity);
+        targetX = Arrays.copyOf(targetX, capacity);
+        targetY = Arrays.copyOf(targetY, capacity);
+        speed = Arrays.copyOf(speed, capacity);
+        time = Arrays.copyOf(time, capacity);
+        reachedSlots = new int[capacity];
+        activeSlots = new int[capacity];
+    }
+
+    /** @return in how many game seconds will the entity reach the end of its path */
+    public float travelTime(@NotNull PositionC position, @NotNull MoveC move) {
+        return move.travelTime(worldService.defaultPathWorld, position.x, position.y);
+    }
 
+    /** Add a move by one tile in given direction to the path. Only one of the deltas should be non-zero. */
+    public static void addTileMoveWaypoint(@NotNull PositionC position, @NotNull MoveC move, int deltaX, int deltaY, float speed) {
         if (deltaX != 0) {
-            // Moving right or left
-            float targetX = MathUtils.floor(previousX) + 0.5f + deltaX;
-            move.addWaypoint(MathUtils.round((previousX + targetX) * 0.5f), previousY, speedTile0);
-            move.addWaypoint(targetX, previousY, speedTile1);
+            move.addStep(position, deltaX > 0 ? MoveC.DIRECTION_RIGHT : MoveC.DIRECTION_LEFT, speed);
         } else if (deltaY != 0) {
-            float targetY = MathUtils.floor(previousY) + 0.5f + deltaY;
-            move.addWaypoint(previousX, MathUtils.round((previousY + targetY) * 0.5f), speedTile0);
-            move.addWaypoint(previousX, targetY, speedTile1);
+            move.addStep(position, deltaY > 0 ? MoveC.DIRECTION_UP : MoveC.DIRECTION_DOWN, speed);
         }
     }
 }
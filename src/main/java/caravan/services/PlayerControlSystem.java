@@ -126,20 +126,15 @@ public final class PlayerControlSystem extends EntityProcessorSystem {
                 nextMoveVerticalChangeCountdown = DIRECTIONAL_MOVE_ALTERNATION_DELAY;
             }
 
-            move.waypoints.clear();
-
-            final int originTileX = MathUtils.floor(position.x);
-            final int originTileY = MathUtils.floor(position.y);
-            MoveSystem.addTileMoveWaypoint(position, move, deltaX, deltaY,
-                    worldService.defaultPathWorld.movementSpeedMultiplier(originTileX, originTileY) * speed,
-                    worldService.defaultPathWorld.movementSpeedMultiplier(originTileX + deltaX, originTileY + deltaY) * speed);
+            move.clearWaypoints();
+            MoveSystem.addTileMoveWaypoint(position, move, deltaX, deltaY, speed);
             directionalMove = true;
             cameraFocusSystem.setFree(false);
             playerC.openTradeOnArrival = true;
             timeService.requestResume();
         } else if (directionalMove) {
             // Stop movement after keys are released
-            move.waypoints.clear();
+            move.clearWaypoints();
             directionalMove = false;
         }
         if (NOTES.isJustReleased()){
@@ -157,13 +152,13 @@ public final class PlayerControlSystem extends EntityProcessorSystem {
                 playerC.openTradeOnArrival = true;
                 timeService.requestResume();
             } else {
-                move.waypoints.clear();
+                move.clearWaypoints();
             }
 
             cameraFocusSystem.setFree(false);
         }
 
-        if (move.waypoints.size == 0 && playerC.openTradeOnArrival) {
+        if (!move.hasWaypoints() && playerC.openTradeOnArrival) {
             timeService.requestPause();
             final int townEntity = townSystem.getNearbyTown(position);
             if (townEntity != -1) {
@@ -3,23 +3,25 @@ package caravan.services;
 import caravan.components.Components;
 import caravan.components.PositionC;
 import caravan.components.RenderC;
-import caravan.util.PooledArray;
 import caravan.util.RenderUtil;
 import caravan.util.Sprite;
 import caravan.util.SpriteAnimation;
 import com.badlogic.gdx.graphics.g2d.Batch;
 import com.badlogic.gdx.graphics.g2d.TextureAtlas;
 import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.IntArray;
 import com.darkyen.retinazer.Mapper;
 import com.darkyen.retinazer.Wire;
 import com.darkyen.retinazer.systems.EntityProcessorSystem;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Arrays;
-import java.util.Comparator;
 
 /**
  * Renders the {@link caravan.components.RenderC} components.
+ * Visible entities come from the {@link SpatialIndexService} grid, which is kept up to date as entities move,
+ * and are ordered from top to bottom by a radix sort over primitive arrays.
+ * Everything that is drawn is copied in {@link #prepareRender(Rectangle)}, so drawing does not need the components.
  */
 public final class RenderSystem extends EntityProcessorSystem implements RenderingService {
 
@@ -28,7 +30,7 @@ public final class RenderSystem extends EntityProcessorSystem implements Renderi
 	@Wire
 	private Mapper<PositionC> position;
 	@Wire
-	private TimeService simulation;
+	private SpatialIndexService spatialIndex;
 
 	public RenderSystem() {
 		super(Components.DOMAIN.familyWith(RenderC.class, PositionC.class));
@@ -36,7 +38,32 @@ public final class RenderSystem extends EntityProcessorSystem implements Renderi
 
 	private static final float RENDER_FRUSTUM_OVERLAP = 5f;
 	private final Rectangle renderFrustum = new Rectangle();
-	private final PooledArray<EntityRenderable> renderables = new PooledArray<>(EntityRenderable.class);
+	private final IntArray visibleEntities = new IntArray();
+
+	/** Visible entities and their draw positions, {@link #renderableCount} of them, in draw order after {@link #sortRenderables()}. */
+	private int renderableCount = 0;
+	private int[] renderableEntity = new int[64];
+	private float[] renderableX = new float[64];
+	private float[] renderableY = new float[64];
+	private int[] renderableKey = new int[64];
+
+	/** Second set of arrays for the radix sort passes. */
+	private int[] sort_entity = new int[64];
+	private float[] sort_x = new float[64];
+	private float[] sort_y = new float[64];
+	private int[] sort_key = new int[64];
+	private final int[] sort_counts = new int[256];
+
+	/** What to draw, copied out of the components in {@link #prepareRender(Rectangle)}, in draw order. */
+	private int drawnCount = 0;
+	private TextureAtlas.AtlasRegion[] drawnRegion = new TextureAtlas.AtlasRegion[64];
+	private float[] drawnX = new float[64];
+	private float[] drawnY = new float[64];
+	private float[] drawnSize = new float[64];
+	private float[] drawnOriginX = new float[64];
+	private float[] drawnOriginY = new float[64];
+	private float[] drawnScaleX = new float[64];
+	private float[] drawnScaleY = new float[64];
 
 	@Override
 	public void update() {
@@ -44,45 +71,66 @@ public final class RenderSystem extends EntityProcessorSystem implements Renderi
 	}
 
 	@Override
-	public void render(@NotNull Batch batch, @NotNull Rectangle frustum) {
+	public void prepareRender(@NotNull Rectangle frustum) {
 		renderFrustum.set(frustum.x - RENDER_FRUSTUM_OVERLAP, frustum.y - RENDER_FRUSTUM_OVERLAP, frustum.width + RENDER_FRUSTUM_OVERLAP * 2f, frustum.height + RENDER_FRUSTUM_OVERLAP * 2f);
 
-		super.update();
-
-		final PooledArray<EntityRenderable> renderables = this.renderables;
-		final int renderableCount = renderables.size;
-		final EntityRenderable[] renderableItems = renderables.items;
-		Arrays.sort(renderableItems, 0, renderableCount, RENDERABLE_COMPARATOR);
+		// Only entities in the frustum, instead of super.update()
+		final IntArray visibleEntities = this.visibleEntities;
+		spatialIndex.rectangle(renderFrustum, visibleEntities);
+		ensureRenderableCapacity(visibleEntities.size);
+		for (int i = 0; i < visibleEntities.size; i++) {
+			final int entity = visibleEntities.get(i);
+			if (render.getOrNull(entity) != null) {
+				process(entity);
+			}
+		}
+		visibleEntities.clear();
 
-		final float animationTime = simulation.gameDelta;
+		sortRenderables();
 
-		batch.begin();
+		// Copy what is drawn, so that drawing does not touch the components
+		final int renderableCount = this.renderableCount;
+		final int[] renderableEntity = this.renderableEntity;
 		final Mapper<RenderC> renderMapper = this.render;
+		int drawnCount = 0;
 		for (int i = 0; i < renderableCount; i++) {
-			final EntityRenderable renderable = renderableItems[i];
-			final RenderC render = renderMapper.get(renderable.entity);
+			final RenderC render = renderMapper.get(renderableEntity[i]);
 			final SpriteAnimation animation = render.sprite;
 			if (animation == null) {
 				continue;
 			}
 
-			// Update frame animation
-			render.timeOnThisFrame += render.animationSpeed * animationTime;
-			while (render.timeOnThisFrame > animation.frameTime) {
-				render.currentFrame++;
-				render.timeOnThisFrame -= animation.frameTime;
-			}
-			render.currentFrame = render.currentFrame % animation.frames.length;
-
-
-			final Sprite frame = animation.frames[render.currentFrame];
+			// Frames are advanced by SpriteAnimationSystem, but the sprite may have been swapped without resetting the frame
+			final Sprite frame = animation.frames[render.currentFrame % animation.frames.length];
 			if (frame == null) continue;
 			final TextureAtlas.AtlasRegion region = frame.getRegion();
 			if (region == null) continue;
-			RenderUtil.drawSprite(batch, region, renderable.x, renderable.y, frame.size, frame.originX, frame.originY, render.scaleX, render.scaleY);
+
+			final int d = drawnCount++;
+			drawnRegion[d] = region;
+			drawnX[d] = renderableX[i];
+			drawnY[d] = renderableY[i];
+			drawnSize[d] = frame.size;
+			drawnOriginX[d] = frame.originX;
+			drawnOriginY[d] = frame.originY;
+			drawnScaleX[d] = render.scaleX;
+			drawnScaleY[d] = render.scaleY;
+		}
+		this.drawnCount = drawnCount;
+		this.renderableCount = 0;
+	}
+
+	@Override
+	public void render(@NotNull Batch batch, @NotNull Rectangle frustum) {
+		final int drawnCount = this.drawnCount;
+		final TextureAtlas.AtlasRegion[] drawnRegion = this.drawnRegion;
+		batch.begin();
+		for (int i = 0; i < drawnCount; i++) {
+			RenderUtil.drawSprite(batch, drawnRegion[i], drawnX[i], drawnY[i], drawnSize[i], drawnOriginX[i], drawnOriginY[i], drawnScaleX[i], drawnScaleY[i]);
 		}
 		batch.end();
-		renderables.clear();
+		Arrays.fill(drawnRegion, 0, drawnCount, null);
+		this.drawnCount = 0;
 	}
 
 	@Override
@@ -90,19 +138,86 @@ public final class RenderSystem extends EntityProcessorSystem implements Renderi
 		final PositionC position = this.position.get(entity);
 		if (!renderFrustum.contains(position.x, position.y)) return; // Not visible, don't render
 
-		final EntityRenderable renderable = renderables.add();
-		renderable.entity = entity;
-		renderable.x = position.x;
-		renderable.y = position.y;
+		final int i = renderableCount++;
+		renderableEntity[i] = entity;
+		renderableX[i] = position.x;
+		renderableY[i] = position.y;
+		renderableKey[i] = drawOrderKey(position.y);
 	}
 
+	private void ensureRenderableCapacity(int capacity) {
+		if (capacity <= renderableEntity.length) {
+			return;
+		}
+		final int newCapacity = Math.max(capacity, renderableEntity.length * 2);
+		renderableEntity = Arrays.copyOf(renderableEntity, newCapacity);
+		renderableX = Arrays.copyOf(renderableX, newCapacity);
+		renderableY = Arrays.copyOf(renderableY, newCapacity);
+		renderableKey = Arrays.copyOf(renderableKey, newCapacity);
+		sort_entity = new int[newCapacity];
+		sort_x = new float[newCapacity];
+		sort_y = new float[newCapacity];
+		sort_key = new int[newCapacity];
+		drawnRegion = new TextureAtlas.AtlasRegion[newCapacity];
+		drawnX = new float[newCapacity];
+		drawnY = new float[newCapacity];
+		drawnSize = new float[newCapacity];
+		drawnOriginX = new float[newCapacity];
+		drawnOriginY = new float[newCapacity];
+		drawnScaleX = new float[newCapacity];
+		drawnScaleY = new float[newCapacity];
+	}
 
-	private static final Comparator<EntityRenderable> RENDERABLE_COMPARATOR = (o1, o2) -> Float.compare(o2.y, o1.y);
+	/** @return key which, compared as unsigned, orders higher y first */
+	private static int drawOrderKey(float y) {
+		final int bits = Float.floatToIntBits(y);
+		// Ascending as signed, then as unsigned, then flip for descending
+		final int ascending = bits ^ ((bits >> 31) & 0x7FFFFFFF);
+		return ~(ascending ^ Integer.MIN_VALUE);
+	}
 
-	public static final class EntityRenderable {
-		public EntityRenderable() {}
+	/** Stable LSD radix sort of renderables by their key, 8 bits per pass. */
+	private void sortRenderables() {
+		final int count = renderableCount;
+		if (count <= 1) {
+			return;
+		}
+		final int[] counts = this.sort_counts;
+		for (int shift = 0; shift < 32; shift += 8) {
+			final int[] key = renderableKey;
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < count; i++) {
+				counts[(key[i] >>> shift) & 0xFF]++;
+			}
+			if (counts[(key[0] >>> shift) & 0xFF] == count) {
+				// All keys share this byte, nothing to reorder
+				continue;
+			}
+			for (int b = 0, offset = 0; b < 256; b++) {
+				final int c = counts[b];
+				counts[b] = offset;
+				offset += c;
+			}
 
-		public int entity;
-		public float x, y;
+			final int[] entity = renderableEntity, outEntity = sort_entity, outKey = sort_key;
+			final float[] x = renderableX, y = renderableY, outX = sort_x, outY = sort_y;
+			for (int i = 0; i < count; i++) {
+				final int to = counts[(key[i] >>> shift) & 0xFF]++;
+				outEntity[to] = entity[i];
+				outX[to] = x[i];
+				outY[to] = y[i];
+				outKey[to] = key[i];
+			}
+
+			// Swap buffers
+			sort_entity = entity;
+			sort_x = x;
+			sort_y = y;
+			sort_key = key;
+			renderableEntity = outEntity;
+			renderableX = outX;
+			renderableY = outY;
+			renderableKey = outKey;
+		}
 	}
 }
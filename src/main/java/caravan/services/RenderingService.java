@@ -18,4 +18,12 @@ public interface RenderingService extends EngineService {
 	 */
 	void render(@NotNull Batch batch, @NotNull Rectangle frustum);
 
+	/**
+	 * Called for all services before any {@link #render(Batch, Rectangle)}, while the simulation is not running.
+	 * When the world draw overlaps the simulation step, rendering happens concurrently with the next step,
+	 * so anything that the rendering needs from the entities must be copied here.
+	 * @param frustum the world-space rectangle that is visible by the camera, filled here by {@link CameraFocusSystem}
+	 */
+	default void prepareRender(@NotNull Rectangle frustum) {}
+
 }
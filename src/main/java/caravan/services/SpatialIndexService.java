@@ -0,0 +1,207 @@
+package caravan.services;
+
+import caravan.components.Components;
+import caravan.components.PositionC;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntIntMap;
+import com.badlogic.gdx.utils.IntMap;
+import com.darkyen.retinazer.EntitySystem;
+import com.darkyen.retinazer.Mapper;
+import com.darkyen.retinazer.Wire;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Uniform grid of all entities with {@link PositionC}, for position queries that don't have to check every entity.
+ * Entities moved by {@link MoveSystem} are updated immediately, other changes are picked up on {@link #update()}.
+ */
+public final class SpatialIndexService extends EntitySystem {
+
+	/** Side of a single grid cell, in tiles. */
+	private static final int CELL_SIZE = 8;
+	private static final int NO_CELL = Integer.MIN_VALUE;
+
+	@Wire
+	private Mapper<PositionC> position;
+
+	/** Cell key to entities in that cell. */
+	private final IntMap<IntArray> cells = new IntMap<>();
+	/** Entity to the key of the cell in which it is. */
+	private final IntIntMap entityCells = new IntIntMap();
+
+	/** Bounds of cells that have ever been occupied, inclusive. */
+	private int minCellX = Integer.MAX_VALUE, minCellY = Integer.MAX_VALUE, maxCellX = Integer.MIN_VALUE, maxCellY = Integer.MIN_VALUE;
+
+	/** For each entity, in which {@link #updateStamp} was it last seen. */
+	private int[] seenStamp = new int[128];
+	private int updateStamp = 0;
+	private final IntArray update_removed = new IntArray();
+
+	public SpatialIndexService() {
+		super(Components.DOMAIN.familyWith(PositionC.class));
+	}
+
+	@Override
+	public void update() {
+		final int stamp = ++updateStamp;
+		final IntArray entities = getEntities().getIndices();
+		for (int i = 0; i < entities.size; i++) {
+			final int entity = entities.get(i);
+			if (entity >= seenStamp.length) {
+				seenStamp = Arrays.copyOf(seenStamp, MathUtils.nextPowerOfTwo(entity + 1));
+			}
+			seenStamp[entity] = stamp;
+			moved(entity, position.get(entity));
+		}
+
+		if (entityCells.size > entities.size) {
+			// Some entities were removed
+			final IntArray removed = this.update_removed;
+			final IntIntMap.Keys keys = entityCells.keys();
+			while (keys.hasNext) {
+				final int entity = keys.next();
+				if (seenStamp[entity] != stamp) {
+					removed.add(entity);
+				}
+			}
+			for (int i = 0; i < removed.size; i++) {
+				final int entity = removed.get(i);
+				cells.get(entityCells.remove(entity, NO_CELL)).removeValue(entity);
+			}
+			removed.clear();
+		}
+	}
+
+	private static int cellCoordinate(float worldCoordinate) {
+		return MathUtils.floor(worldCoordinate / CELL_SIZE);
+	}
+
+	private static int cellKey(int cellX, int cellY) {
+		return (cellX & 0xFFFF) | (cellY << 16);
+	}
+
+	/** Notify the index that the entity has moved to the given position. */
+	public void moved(int entity, @NotNull PositionC position) {
+		final int cellX = cellCoordinate(position.x);
+		final int cellY = cellCoordinate(position.y);
+		final int cell = cellKey(cellX, cellY);
+		final int oldCell = entityCells.get(entity, NO_CELL);
+		if (oldCell == cell) {
+			return;
+		}
+
+		if (oldCell != NO_CELL) {
+			cells.get(oldCell).removeValue(entity);
+		}
+		entityCells.put(entity, cell);
+		IntArray cellEntities = cells.get(cell);
+		if (cellEntities == null) {
+			cellEntities = new IntArray();
+			cells.put(cell, cellEntities);
+			minCellX = Math.min(minCellX, cellX);
+			minCellY = Math.min(minCellY, cellY);
+			maxCellX = Math.max(maxCellX, cellX);
+			maxCellY = Math.max(maxCellY, cellY);
+		}
+		cellEntities.add(entity);
+	}
+
+	/** Find the entity closest (by manhattan distance) to the given point.
+	 * @param maxDistance only entities closer than this are considered
+	 * @param filter only entities accepted by this are considered, null to consider all
+	 * @return the entity or -1 if there is no such entity */
+	public int nearest(float x, float y, float maxDistance, @Nullable IntPredicate filter) {
+		if (cells.size == 0) {
+			return -1;
+		}
+		final int centerX = cellCoordinate(x);
+		final int centerY = cellCoordinate(y);
+		final int maxRing = Math.max(Math.max(centerX - minCellX, maxCellX - centerX), Math.max(centerY - minCellY, maxCellY - centerY));
+
+		int nearest = -1;
+		float nearestDistance = maxDistance;
+		for (int ring = 0; ring <= maxRing; ring++) {
+			// Anything in this ring is at least this far away
+			if ((ring - 1) * CELL_SIZE >= nearestDistance) {
+				break;
+			}
+
+			for (int cellY = centerY - ring; cellY <= centerY + ring; cellY++) {
+				final boolean edgeRow = cellY == centerY - ring || cellY == centerY + ring;
+				// Only the cells on the edge of the ring
+				final int step = edgeRow || ring == 0 ? 1 : ring * 2;
+				for (int cellX = centerX - ring; cellX <= centerX + ring; cellX += step) {
+					final IntArray cellEntities = cells.get(cellKey(cellX, cellY));
+					if (cellEntities == null) {
+						continue;
+					}
+
+					for (int i = 0; i < cellEntities.size; i++) {
+						final int entity = cellEntities.get(i);
+						final float distance = PositionC.manhattanDistance(position.get(entity), x, y);
+						if (distance < nearestDistance && (filter == null || filter.test(entity))) {
+							nearest = entity;
+							nearestDistance = distance;
+						}
+					}
+				}
+			}
+		}
+
+		return nearest;
+	}
+
+	/** Add all entities whose position is in the rectangle (inclusive) into out. */
+	public void rectangle(@NotNull Rectangle rectangle, @NotNull IntArray out) {
+		final int minX = Math.max(cellCoordinate(rectangle.x), minCellX);
+		final int minY = Math.max(cellCoordinate(rectangle.y), minCellY);
+		final int maxX = Math.min(cellCoordinate(rectangle.x + rectangle.width), maxCellX);
+		final int maxY = Math.min(cellCoordinate(rectangle.y + rectangle.height), maxCellY);
+
+		for (int cellY = minY; cellY <= maxY; cellY++) {
+			for (int cellX = minX; cellX <= maxX; cellX++) {
+				final IntArray cellEntities = cells.get(cellKey(cellX, cellY));
+				if (cellEntities == null) {
+					continue;
+				}
+
+				for (int i = 0; i < cellEntities.size; i++) {
+					final int entity = cellEntities.get(i);
+					final PositionC position = this.position.get(entity);
+					if (rectangle.contains(position.x, position.y)) {
+						out.add(entity);
+					}
+				}
+			}
+		}
+	}
+
+	/** Add all entities whose manhattan distance from the given point is at most radius into out. */
+	public void radius(float x, float y, float radius, @NotNull IntArray out) {
+		final int minX = Math.max(cellCoordinate(x - radius), minCellX);
+		final int minY = Math.max(cellCoordinate(y - radius), minCellY);
+		final int maxX = Math.min(cellCoordinate(x + radius), maxCellX);
+		final int maxY = Math.min(cellCoordinate(y + radius), maxCellY);
+
+		for (int cellY = minY; cellY <= maxY; cellY++) {
+			for (int cellX = minX; cellX <= maxX; cellX++) {
+				final IntArray cellEntities = cells.get(cellKey(cellX, cellY));
+				if (cellEntities == null) {
+					continue;
+				}
+
+				for (int i = 0; i < cellEntities.size; i++) {
+					final int entity = cellEntities.get(i);
+					if (PositionC.manhattanDistance(position.get(entity), x, y) <= radius) {
+						out.add(entity);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package caravan.services;
+
+import caravan.components.Components;
+import caravan.components.RenderC;
+import caravan.util.SpriteAnimation;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.IntArray;
+import com.darkyen.retinazer.EntitySystem;
+import com.darkyen.retinazer.Mapper;
+import com.darkyen.retinazer.Wire;
+
+import java.util.Arrays;
+
+/**
+ * Advances the frames of all animated {@link RenderC} sprites, visible or not, so that {@link RenderSystem} only reads them.
+ *
+ * Animation state of all animated entities is gathered into parallel arrays,
+ * the new frame is computed directly from the elapsed time and then written back.
+ */
+public final class SpriteAnimationSystem extends EntitySystem {
+
+	@Wire
+	private Mapper<RenderC> renderMapper;
+	@Wire
+	private TimeService simulation;
+
+	/** Animation state of animated entities, indexed by slot. */
+	private int[] animatedEntity = new int[64];
+	private float[] time = new float[64];
+	private int[] frame = new int[64];
+	private float[] frameTime = new float[64];
+	private int[] frameCount = new int[64];
+
+	public SpriteAnimationSystem() {
+		super(Components.DOMAIN.familyWith(RenderC.class));
+	}
+
+	@Override
+	public void update() {
+		final float delta = simulation.gameDelta;
+		if (delta <= 0f) {
+			return;
+		}
+
+		// Gather
+		final IntArray entities = getEntities().getIndices();
+		ensureCapacity(entities.size);
+		final int[] animatedEntity = this.animatedEntity, frame = this.frame, frameCount = this.frameCount;
+		final float[] time = this.time, frameTime = this.frameTime;
+		int count = 0;
+		for (int i = 0; i < entities.size; i++) {
+			final int entity = entities.get(i);
+			final RenderC render = renderMapper.get(entity);
+			final SpriteAnimation animation = render.sprite;
+			if (animation == null || animation.frames.length <= 1) {
+				continue;
+			}
+			animatedEntity[count] = entity;
+			time[count] = render.timeOnThisFrame + render.animationSpeed * delta;
+			frame[count] = render.currentFrame;
+			frameTime[count] = animation.frameTime;
+			frameCount[count] = animation.frames.length;
+			count++;
+		}
+
+		// Advance
+		for (int slot = 0; slot < count; slot++) {
+			final float t = time[slot];
+			final float length = frameTime[slot];
+			final int advance = t > 0f ? (int) (t / length) : 0;
+			time[slot] = Math.max(t - advance * length, 0f);
+			frame[slot] = (int) ((frame[slot] + (long) advance) % frameCount[slot]);
+		}
+
+		// Scatter
+		for (int slot = 0; slot < count; slot++) {
+			final RenderC render = renderMapper.get(animatedEntity[slot]);
+			render.timeOnThisFrame = time[slot];
+			render.currentFrame = frame[slot];
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (animatedEntity.length >= capacity) {
+			return;
+		}
+		capacity = MathUtils.nextPowerOfTwo(capacity);
+		animatedEntity = Arrays.copyOf(animatedEntity, capacity);
+		time = Arrays.copyOf(time, capacity);
+		frame = Arrays.copyOf(frame, capacity);
+		frameTime = Arrays.copyOf(frameTime, capacity);
+		frameCount = Arrays.copyOf(frameCount, capacity);
+	}
+}
@@ -49,6 +49,10 @@ public final class TimeService implements EngineService, StatefulService, UIServ
 	private @Nullable Boolean pauseRequested = null;
 	private float requestedTimeScale = timeScale;
 
+	/** Create time service without any input bindings or UI, for simulations without the player. */
+	public TimeService() {
+	}
+
 	public TimeService(@NotNull GameInput gameInput) {
 		gameInput.use(Inputs.PAUSE, (times, pressed) -> {
 			if (pressed) {
@@ -94,21 +98,32 @@ public final class TimeService implements EngineService, StatefulService, UIServ
 			pauseRequested = null;
 		}
 		timeScale = requestedTimeScale;
-		gameDelta = simulating ? rawDelta * timeScale : 0f;
 
-		pausedOverlay.setVisible(!simulating);
+		if (pausedOverlay != null) {
+			pausedOverlay.setVisible(!simulating);
+		}
 
-		if (simulating) {
-			dayAdvances = 0;
-			timeOfDay += gameDelta / DAY_DURATION;
-			while (timeOfDay >= 1f) {
-				dayAdvances++;
-				day++;
-				timeOfDay -= 1f;
-			}
+		advance(simulating ? rawDelta * timeScale : 0f);
+	}
+
+	/** Set the {@link #gameDelta} and advance the game time by it.
+	 * Used directly by {@link FastForwardService} to simulate in fixed steps. */
+	void advance(float gameDelta) {
+		this.gameDelta = gameDelta;
+		dayAdvances = 0;
+		timeOfDay += gameDelta / DAY_DURATION;
+		while (timeOfDay >= 1f) {
+			dayAdvances++;
+			day++;
+			timeOfDay -= 1f;
 		}
 	}
 
+	/** @return game seconds since day 0, monotonic while the game is running */
+	public double gameTime() {
+		return ((double) day + timeOfDay) * DAY_DURATION;
+	}
+
 	@Override
 	public int stateVersion() {
 		return 1;
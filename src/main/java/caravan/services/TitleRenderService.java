@@ -7,14 +7,19 @@ import caravan.components.TitleC;
 import com.badlogic.gdx.graphics.g2d.Batch;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.BitmapFontCache;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.scenes.scene2d.Stage;
 import com.badlogic.gdx.scenes.scene2d.ui.Widget;
 import com.badlogic.gdx.utils.Align;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntMap;
 import com.darkyen.retinazer.Mapper;
 import com.darkyen.retinazer.Wire;
 import com.darkyen.retinazer.systems.EntityProcessorSystem;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Service that renders titles specified by {@link TitleC}.
@@ -28,6 +33,8 @@ public final class TitleRenderService extends EntityProcessorSystem implements U
 
 	@Wire
 	private CameraFocusSystem cameraFocusSystem;
+	@Wire
+	private SpatialIndexService spatialIndex;
 
 	private BitmapFont titleFont;
 
@@ -58,7 +65,7 @@ public final class TitleRenderService extends EntityProcessorSystem implements U
 
 				renderBatch = batch;
 				try {
-					TitleRenderService.super.update();
+					drawVisibleTitles();
 				} finally {
 					renderBatch = null;
 				}
@@ -68,6 +75,57 @@ public final class TitleRenderService extends EntityProcessorSystem implements U
 		stage.getRoot().addActorAt(0, titleRenderWidget);
 	}
 
+	/** Titles can stick out of the frustum a bit, in world units. */
+	private static final float TITLE_FRUSTUM_OVERLAP = 5f;
+	private final Rectangle titleFrustum = new Rectangle();
+	private final IntArray visibleEntities = new IntArray();
+
+	/** Maps world coordinates directly to the coordinates of the title widget, updated each frame. */
+	private final Matrix4 worldToUi = new Matrix4();
+	/** Laid out titles of entities, by entity. Entries are reused by new entities with the same index. */
+	private final IntMap<TitleLayout> titleLayouts = new IntMap<>();
+	private final IntArray sweep_removed = new IntArray();
+
+	private void drawVisibleTitles() {
+		final Rectangle frustum = cameraFocusSystem.lastFrustum;
+		titleFrustum.set(frustum.x - TITLE_FRUSTUM_OVERLAP, frustum.y - TITLE_FRUSTUM_OVERLAP, frustum.width + TITLE_FRUSTUM_OVERLAP * 2f, frustum.height + TITLE_FRUSTUM_OVERLAP * 2f);
+
+		// Both cameras are orthographic, so the projections can be combined
+		worldToUi.set(titleRenderWidget.getStage().getViewport().getCamera().invProjectionView)
+				.mul(cameraFocusSystem.viewport.getCamera().combined);
+
+		final IntArray visibleEntities = this.visibleEntities;
+		spatialIndex.rectangle(titleFrustum, visibleEntities);
+		for (int i = 0; i < visibleEntities.size; i++) {
+			final int entity = visibleEntities.get(i);
+			if (title.getOrNull(entity) != null) {
+				process(entity);
+			}
+		}
+		visibleEntities.clear();
+
+		sweepTitleLayouts();
+	}
+
+	/** Forget the layouts of entities that no longer have a title. */
+	private void sweepTitleLayouts() {
+		if (titleLayouts.size <= getEntities().getIndices().size) {
+			return;
+		}
+		final IntArray removed = this.sweep_removed;
+		final IntMap.Keys keys = titleLayouts.keys();
+		while (keys.hasNext) {
+			final int entity = keys.next();
+			if (title.getOrNull(entity) == null || position.getOrNull(entity) == null) {
+				removed.add(entity);
+			}
+		}
+		for (int i = 0; i < removed.size; i++) {
+			titleLayouts.remove(removed.get(i));
+		}
+		removed.clear();
+	}
+
 	private final Vector3 process_projectTmp = new Vector3();
 
 	@Override
@@ -76,8 +134,7 @@ public final class TitleRenderService extends EntityProcessorSystem implements U
 		final TitleC title = this.title.get(entity);
 
 		final Vector3 local = process_projectTmp.set(position.x, position.y + title.yOffset, 0f);
-		local.prj(cameraFocusSystem.viewport.getCamera().combined);
-		local.prj(titleRenderWidget.getStage().getViewport().getCamera().invProjectionView);
+		local.prj(worldToUi);
 
 		final float wx = titleRenderWidget.getX();
 		final float wy = titleRenderWidget.getY();
@@ -92,12 +149,40 @@ public final class TitleRenderService extends EntityProcessorSystem implements U
 		final float alphaX = Math.min(Math.min((local.x - wx) * edge, (wx + ww - local.x) * edge), 1f);
 		final float alphaY = Math.min(Math.min((local.y - wy) * edge, (wy + wh - local.y) * edge), 1f);
 
-
-		final BitmapFontCache cache = titleFont.getCache();
-		cache.setColor(title.color);
-		cache.getColor().a *= alphaX * alphaY;
-		cache.setText(title.title, local.x, local.y, 0, Align.center, false);
+		TitleLayout layout = titleLayouts.get(entity);
+		if (layout == null) {
+			layout = new TitleLayout(titleFont);
+			titleLayouts.put(entity, layout);
+		}
+		final BitmapFontCache cache = layout.cache;
+		final float colorBits = title.color.toFloatBits();
+		if (!title.title.equals(layout.title) || colorBits != layout.colorBits) {
+			// Lay out at the origin, it is moved into place below
+			layout.title = title.title;
+			layout.colorBits = colorBits;
+			layout.alpha = title.color.a;
+			cache.setColor(title.color);
+			cache.setText(title.title, 0f, 0f, 0f, Align.center, false);
+		}
+		cache.setPosition(local.x, local.y);
+		final float alpha = title.color.a * alphaX * alphaY;
+		if (alpha != layout.alpha) {
+			layout.alpha = alpha;
+			cache.setAlphas(alpha);
+		}
 		cache.draw(renderBatch);
-		cache.clear();
+	}
+
+	/** Glyphs of a single title, laid out only when the title changes. */
+	private static final class TitleLayout {
+		final @NotNull BitmapFontCache cache;
+		@Nullable String title = null;
+		float colorBits;
+		/** Alpha that the cache currently uses. */
+		float alpha;
+
+		TitleLayout(@NotNull BitmapFont font) {
+			this.cache = new BitmapFontCache(font, font.usesIntegerPositions());
+		}
 	}
 }
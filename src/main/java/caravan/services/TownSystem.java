@@ -4,12 +4,12 @@ import caravan.components.Components;
 import caravan.components.PositionC;
 import caravan.components.RenderC;
 import caravan.components.TownC;
-import caravan.util.Inventory;
+import caravan.util.PriceList;
+import caravan.world.Environment;
 import caravan.world.Merchandise;
 import caravan.world.Production;
 import caravan.world.Sprites;
 import com.badlogic.gdx.math.MathUtils;
-import com.badlogic.gdx.math.RandomXS128;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.IntArray;
 import com.badlogic.gdx.utils.ObjectIntMap;
@@ -18,6 +18,8 @@ import com.darkyen.retinazer.Wire;
 import com.darkyen.retinazer.systems.EntityProcessorSystem;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Random;
+
 import static caravan.util.Util.max;
 import static caravan.util.Util.maxIndex;
 import static caravan.util.Util.rRound;
@@ -36,6 +38,10 @@ public final class TownSystem extends EntityProcessorSystem {
 	private Mapper<PositionC> position;
 	@Wire
 	private Mapper<RenderC> render;
+	@Wire
+	private SpatialIndexService spatialIndex;
+	@Wire
+	private MarketBoardService marketBoard;
 
 	private static final int MIN_POPULATION = 10;
 	private static final int CASTLE_POPULATION = 80;
@@ -55,34 +61,19 @@ public final class TownSystem extends EntityProcessorSystem {
 	@Override
 	protected void process(int entity) {
 		final TownC town = this.town.get(entity);
+		town.rumors.update(timeService.day);
 		if (simulateInternalEconomy(town) != 0) {
 			final RenderC render = this.render.getOrNull(entity);
 			if (render != null) {
 				render.sprite = town.population >= CASTLE_POPULATION ? Sprites.CASTLE : Sprites.VILLAGE;
 			}
 		}
+		marketBoard.publish(entity, town, timeService.day);
 	}
 
 	public int getNearestTown(@NotNull PositionC position, float maxDistance, int excludingTownEntity) {
-		int town = -1;
-		float townDistance = maxDistance;
-
-		final IntArray townIndices = getEntities().getIndices();
-		for (int i = 0; i < townIndices.size; i++) {
-			final int townEntity = townIndices.get(i);
-			if (townEntity == excludingTownEntity) {
-				continue;
-			}
-
-			final PositionC townPos = this.position.get(townEntity);
-			final float distance = PositionC.manhattanDistance(townPos, position);
-			if (distance < townDistance) {
-				town = townEntity;
-				townDistance = distance;
-			}
-		}
-
-		return town;
+		return spatialIndex.nearest(position.x, position.y, maxDistance,
+				entity -> entity != excludingTownEntity && town.getOrNull(entity) != null);
 	}
 
 	/** Get a town entity that is accessible from the given position or -1 if there is no such town. */
@@ -99,26 +90,30 @@ public final class TownSystem extends EntityProcessorSystem {
 	}
 
 	private static void simulateInternalProduction(@NotNull TownC town) {
-		final Inventory produced = new Inventory();
-		final Inventory consumed = new Inventory();
-		final Inventory consumedOne = new Inventory();
+		final int[] outputs = Production.DENSE_OUTPUT;
+		final float[] outputAmounts = town.environment.productionOutputs();
+		final float[][] inputAmounts = town.environment.productionInputs();
+		final float[] produced = new float[Merchandise.COUNT];
+		final float[] consumed = new float[Merchandise.COUNT];
 
 		for (ObjectIntMap.Entry<Production> entry : town.production) {
-			final Production production = entry.key;
+			final int production = Production.REGISTRY.denseIndex(entry.key);
 			final float scale = entry.value / 10f;
 
-			final float created = production.produce(town.environment, consumedOne);
-			produced.add(production.output, created * scale);
-			consumed.add(consumedOne, scale);
-			consumedOne.reset();
+			produced[outputs[production]] += outputAmounts[production] * scale;
+			final float[] inputRow = inputAmounts[production];
+			for (int m = 0; m < Merchandise.COUNT; m++) {
+				consumed[m] += inputRow[m] * scale;
+			}
 		}
 
 		for (Merchandise m : Merchandise.VALUES) {
-			final int p = produced.get(m);
+			// Random rounding
+			final int p = (int) (produced[m.ordinal()] + MathUtils.random());
 			for (int i = 0; i < p; i++) {
 				town.prices.sellUnit(m);
 			}
-			final int c = consumed.get(m);
+			final int c = (int) (consumed[m.ordinal()] + MathUtils.random());
 			for (int i = 0; i < c; i++) {
 				town.prices.buyUnit(m);
 			}
@@ -218,13 +213,10 @@ public final class TownSystem extends EntityProcessorSystem {
 
 	/** Pick which production leads to most money. */
 	private static int updateProduction(@NotNull TownC town) {
-		final RandomXS128 random = new RandomXS128();
+		final Random random = MathUtils.random;
 
-		final int productionCount = Production.REGISTRY.count();
-		float[] profitByProduction = new float[productionCount];
-		for (int i = 0; i < productionCount; i++) {
-			profitByProduction[i] = productionProfit(town, Production.REGISTRY.getDense(i));
-		}
+		final float[] profitByProduction = new float[Production.REGISTRY.count()];
+		productionProfits(town.prices, town.environment, profitByProduction);
 		final float maxProfitableProduction = max(profitByProduction);
 		final float veryLowProfitThreshold = maxProfitableProduction / 10f;
 		final float lowProfitThreshold = maxProfitableProduction / 2f;
@@ -235,7 +227,7 @@ public final class TownSystem extends EntityProcessorSystem {
 		for (ObjectIntMap.Entry<Production> entry : town.production) {
 			final Production production = entry.key;
 			int workers = entry.value;
-			final float profit = productionProfit(town, production);
+			final float profit = profitByProduction[Production.REGISTRY.denseIndex(production)];
 			if (profit <= veryLowProfitThreshold) {
 				workers = workers / 2;
 			} else if (profit <= lowProfitThreshold) {
@@ -292,13 +284,13 @@ public final class TownSystem extends EntityProcessorSystem {
 	}
 
 	public static float productionProfit(@NotNull TownC town, @NotNull Production production) {
-		final Inventory inv = new Inventory();
-		final float result = production.produce(town.environment, inv);
+		final int p = Production.REGISTRY.denseIndex(production);
+		final float[] inputRow = town.environment.productionInputs()[p];
 
-		float gained = result * town.prices.buyPrice(production.output);
+		float gained = town.environment.productionOutputs()[p] * town.prices.buyPrice(production.output);
 		float lost = 0f;
 		for (Merchandise m : Merchandise.VALUES) {
-			final int amount = inv.get(m);
+			final float amount = inputRow[m.ordinal()];
 			if (amount != 0) {
 				lost += amount * town.prices.sellPrice(m);
 			}
@@ -306,4 +298,27 @@ public final class TownSystem extends EntityProcessorSystem {
 
 		return gained - lost;
 	}
+
+	/** Compute {@link #productionProfit(TownC, Production)} of all productions at once.
+	 * @param result indexed by {@link Id.Registry#denseIndex(Id)} */
+	public static void productionProfits(@NotNull PriceList prices, @NotNull Environment environment, float @NotNull [] result) {
+		final float[] buyPrices = new float[Merchandise.COUNT];
+		final float[] sellPrices = new float[Merchandise.COUNT];
+		for (Merchandise m : Merchandise.VALUES) {
+			buyPrices[m.ordinal()] = prices.buyPrice(m);
+			sellPrices[m.ordinal()] = prices.sellPrice(m);
+		}
+
+		final int[] outputs = Production.DENSE_OUTPUT;
+		final float[] outputAmounts = environment.productionOutputs();
+		final float[][] inputAmounts = environment.productionInputs();
+		for (int p = 0; p < outputs.length; p++) {
+			final float[] inputRow = inputAmounts[p];
+			float lost = 0f;
+			for (int m = 0; m < Merchandise.COUNT; m++) {
+				lost += inputRow[m] * sellPrices[m];
+			}
+			result[p] = outputAmounts[p] * buyPrices[outputs[p]] - lost;
+		}
+	}
 }
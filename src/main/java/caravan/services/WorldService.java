@@ -4,16 +4,23 @@ import caravan.components.MoveC;
 import caravan.components.PositionC;
 import caravan.util.PathFinding;
 import caravan.util.Vec2;
+import caravan.world.TerrainLod;
 import caravan.world.Tile;
+import caravan.world.TileChunkCache;
+import caravan.world.TileOverlapGrid;
+import caravan.world.TileShaderMap;
 import caravan.world.WorldAttribute;
+import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.g2d.Batch;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.LongArray;
 import com.darkyen.retinazer.EngineService;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Stores and renders tiles of the world.
@@ -22,9 +29,22 @@ public final class WorldService implements EngineService, RenderingService, Stat
 
 	public int width, height;
 	public WorldAttribute<Tile> tiles;
+	/** How are the {@link #tiles} drawn. */
+	public TileOverlapGrid tileOverlaps;
 
 	public PathFinding pathFinding;
 
+	/** Whether tile graphics should be loaded. False when running without graphics. */
+	private final boolean graphics;
+	/** Baked tile graphics, null when running without graphics. */
+	private @Nullable TileChunkCache tileChunkCache;
+	/** Draws the tiles on the GPU, null when running without graphics or when not supported. */
+	private @Nullable TileShaderMap tileShaderMap;
+	private @Nullable TerrainLod terrainLod;
+
+	/** Notified about changed tiles. */
+	private final Array<TileListener> tileListeners = new Array<>(false, 4, TileListener.class);
+
 	public final PathFinding.PathWorld defaultPathWorld = new PathFinding.PathWorld() {
 		@Override
 		public boolean isAccessible(int x, int y) {
@@ -39,6 +59,11 @@ public final class WorldService implements EngineService, RenderingService, Stat
 	};
 
 	public WorldService(int width, int height, @NotNull Tile defaultTile) {
+		this(width, height, defaultTile, true);
+	}
+
+	public WorldService(int width, int height, @NotNull Tile defaultTile, boolean graphics) {
+		this.graphics = graphics;
 		reset(width, height, defaultTile);
 	}
 
@@ -46,27 +71,107 @@ public final class WorldService implements EngineService, RenderingService, Stat
 		this.width = width;
 		this.height = height;
 		this.tiles = new WorldAttribute<>(width, height, defaultTile);
+		this.tileOverlaps = new TileOverlapGrid(tiles);
 
 		this.pathFinding = new PathFinding(width, height, defaultPathWorld);
+		tilesChanged();
+	}
+
+	/** Set the tile at the given position. Tiles should be changed through this, so that the change is rendered. */
+	public void setTile(int x, int y, @NotNull Tile tile) {
+		tiles.set(x, y, tile);
+		tileOverlaps.invalidate(x, y);
+		if (tileChunkCache != null) {
+			tileChunkCache.invalidate(x, y);
+		}
+		if (tileShaderMap != null) {
+			tileShaderMap.invalidate(x, y);
+		}
+		if (terrainLod != null) {
+			terrainLod.invalidate(x, y);
+		}
+		for (TileListener listener : tileListeners) {
+			listener.tileChanged(x, y);
+		}
+	}
+
+	/** Notify that any number of tiles may have been changed directly through {@link #tiles}. */
+	public void tilesChanged() {
+		tileOverlaps.invalidateAll();
+		if (tileChunkCache != null) {
+			tileChunkCache.invalidateAll();
+		}
+		if (tileShaderMap != null) {
+			tileShaderMap.invalidateAll();
+		}
+		if (terrainLod != null) {
+			terrainLod.invalidateAll();
+		}
+		for (TileListener listener : tileListeners) {
+			listener.tilesChanged();
+		}
+	}
+
+	/** Listener will be notified whenever {@link #setTile(int, int, Tile)} or {@link #tilesChanged()} is called. */
+	public void addTileListener(@NotNull TileListener listener) {
+		tileListeners.add(listener);
 	}
 
 	@Override
 	public void initialize() {
+		if (!graphics) {
+			return;
+		}
 		// Ensure that tile graphics is loaded, so we don't have to worry about it during rendering
 		for (Tile tile : Tile.REGISTRY) {
 			tile.ensureLoaded();
 		}
+		tileChunkCache = new TileChunkCache();
+		tileShaderMap = TileShaderMap.create();
+		if (tileShaderMap == null) {
+			Gdx.app.log("WorldService", "Tiles can't be drawn by the tile shader, falling back to tile meshes");
+		}
+		terrainLod = new TerrainLod();
+	}
+
+	/** Free the baked tile graphics. */
+	public void dispose() {
+		if (tileShaderMap != null) {
+			tileShaderMap.dispose();
+			tileShaderMap = null;
+		}
+		if (terrainLod != null) {
+			terrainLod.dispose();
+			terrainLod = null;
+		}
+		if (tileChunkCache != null) {
+			tileChunkCache.dispose();
+			tileChunkCache = null;
+		}
 	}
 
 	@Override
 	public void render(@NotNull Batch batch, @NotNull Rectangle frustum) {
-		batch.begin();
+		if (terrainLod != null && TerrainLod.shouldUse(Gdx.graphics.getBackBufferWidth() / frustum.width)) {
+			// Zoomed out so much that the tiles are tiny, measured in real pixels, which differ from the logical size on HiDPI
+			terrainLod.render(this.tileOverlaps, batch);
+			return;
+		}
+
 		final float OVERLAP = 3;
 		final int x0 = MathUtils.floor(frustum.x - OVERLAP);
 		final int y0 = MathUtils.floor(frustum.y - OVERLAP);
 		final int x1 = MathUtils.ceil(frustum.x + frustum.width + OVERLAP);
 		final int y1 = MathUtils.ceil(frustum.y + frustum.height + OVERLAP);
-		Tile.drawTiles(this.tiles, batch, x0, y0, x1, y1);
+		if (tileShaderMap != null && tileShaderMap.render(this.tileOverlaps, batch, x0, y0, x1, y1)) {
+			return;
+		}
+		if (tileChunkCache != null) {
+			tileChunkCache.render(this.tileOverlaps, batch, x0, y0, x1, y1);
+			return;
+		}
+		batch.begin();
+		Tile.drawTiles(this.tileOverlaps, batch, x0, y0, x1, y1);
 		batch.end();
 	}
 
@@ -82,19 +187,16 @@ public final class WorldService implements EngineService, RenderingService, Stat
 			return false;
 		}
 
-		move.waypoints.clear();
+		move.clearWaypoints();
 		int lastX = originTileX;
 		int lastY = originTileY;
-		float tileSpeed0 = defaultPathWorld.movementSpeedMultiplier(lastX, lastY) * speed;
 
 		for (int i = 0; i < foundPath.length(); i++) {
 			final int x = foundPath.nodeX(i);
 			final int y = foundPath.nodeY(i);
-			float tileSpeed1 = defaultPathWorld.movementSpeedMultiplier(x, y) * speed;
-			MoveSystem.addTileMoveWaypoint(position, move, x - lastX, y - lastY, tileSpeed0, tileSpeed1);
+			MoveSystem.addTileMoveWaypoint(position, move, x - lastX, y - lastY, speed);
 			lastX = x;
 			lastY = y;
-			tileSpeed0 = tileSpeed1;
 		}
 		return true;
 	}
@@ -124,5 +226,15 @@ public final class WorldService implements EngineService, RenderingService, Stat
 		for (int i = 0; i < values.length; i++) {
 			values[i] = Tile.REGISTRY.getOrDefault(input.readShort());
 		}
+		tilesChanged();
+	}
+
+	/** Notified about changes of the {@link #tiles}. */
+	public interface TileListener {
+		/** Tile at given position has changed. */
+		void tileChanged(int x, int y);
+
+		/** Any tile may have changed, including the size of the world. */
+		void tilesChanged();
 	}
 }
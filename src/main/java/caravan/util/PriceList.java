@@ -18,22 +18,59 @@ public final class PriceList {
 	/** How many units have been bought here */
 	private final short[] demand = new short[Merchandise.COUNT];
 
+	/** Prices are queried much more often than they change, so they are cached.
+	 * Entry is invalidated (set to {@link #INVALID_PRICE}) whenever the supply or demand it depends on changes. */
+	private final int[] buyPrices = new int[Merchandise.COUNT];
+	private final int[] sellPrices = new int[Merchandise.COUNT];
+	private final float[] basePrices = new float[Merchandise.COUNT];
+	private static final int INVALID_PRICE = Integer.MIN_VALUE;
+
+	{
+		invalidatePrices();
+	}
+
 	/** Price a caravan has to pay for a single unit of merchandise. */
 	public int buyPrice(@NotNull Merchandise m) {
-		return MathUtils.ceil(basePrice(m) * (1f + baseVariability(m)));
+		final int ordinal = m.ordinal();
+		int price = buyPrices[ordinal];
+		if (price == INVALID_PRICE) {
+			buyPrices[ordinal] = price = MathUtils.ceil(basePrice(m) * (1f + baseVariability(m)));
+		}
+		return price;
 	}
 
 	/** Price a caravan will get for selling a single unit of merchandise. */
 	public int sellPrice(@NotNull Merchandise m) {
-		return MathUtils.floor(basePrice(m) * (1f - baseVariability(m)));
+		final int ordinal = m.ordinal();
+		int price = sellPrices[ordinal];
+		if (price == INVALID_PRICE) {
+			sellPrices[ordinal] = price = MathUtils.floor(basePrice(m) * (1f - baseVariability(m)));
+		}
+		return price;
 	}
 
 	/** Price locals pay for the merchandise. */
 	public float basePrice(@NotNull Merchandise m) {
 		final int ordinal = m.ordinal();
-		final float result = (float) (Math.pow(1.02, demand[ordinal] - supply[ordinal]) * 10);
-		//assert isSanePositive(result);
-		return MathUtils.clamp(result, 0.1f, 500f);
+		float price = basePrices[ordinal];
+		if (Float.isNaN(price)) {
+			final float result = (float) (Math.pow(1.02, demand[ordinal] - supply[ordinal]) * 10);
+			//assert isSanePositive(result);
+			basePrices[ordinal] = price = MathUtils.clamp(result, 0.1f, 500f);
+		}
+		return price;
+	}
+
+	private void invalidatePrice(int ordinal) {
+		buyPrices[ordinal] = INVALID_PRICE;
+		sellPrices[ordinal] = INVALID_PRICE;
+		basePrices[ordinal] = Float.NaN;
+	}
+
+	private void invalidatePrices() {
+		Arrays.fill(buyPrices, INVALID_PRICE);
+		Arrays.fill(sellPrices, INVALID_PRICE);
+		Arrays.fill(basePrices, Float.NaN);
 	}
 
 	/** The more goods are traded, the smaller the buy/sell gap is. Returns values (0, 0.5]. */
@@ -49,12 +86,14 @@ public final class PriceList {
 	public void buyUnit(@NotNull Merchandise m) {
 		final int ordinal = m.ordinal();
 		demand[ordinal] = Util.toShortClampUnsigned(demand[ordinal] + 1);
+		invalidatePrice(ordinal);
 	}
 
 	/** Update prices after a single unit of merchandise was sold to the town by a caravan. */
 	public void sellUnit(@NotNull Merchandise m) {
 		final int ordinal = m.ordinal();
 		supply[ordinal] = Util.toShortClampUnsigned(supply[ordinal] + 1);
+		invalidatePrice(ordinal);
 	}
 
 	/** Called every game day or so to update the internal counters. */
@@ -64,8 +103,11 @@ public final class PriceList {
 		final int length = demand.length;
 		for (int i = 0; i < length; i++) {
 			int fulfilledDemand = Math.min(supply[i], demand[i]) / 3;
-			supply[i] -= fulfilledDemand;
-			demand[i] -= fulfilledDemand;
+			if (fulfilledDemand != 0) {
+				supply[i] -= fulfilledDemand;
+				demand[i] -= fulfilledDemand;
+				invalidatePrice(i);
+			}
 		}
 	}
 
@@ -75,11 +117,13 @@ public final class PriceList {
 	public void clear() {
 		Arrays.fill(this.demand, (short) 0);
 		Arrays.fill(this.supply, (short) 0);
+		invalidatePrices();
 	}
 
 	public void initialize(short defaultSupply, short defaultDemand) {
 		Arrays.fill(this.demand, defaultSupply);
 		Arrays.fill(this.supply, defaultDemand);
+		invalidatePrices();
 	}
 
 	/** Add everything from the other price list into this one. Used during world generation. */
@@ -92,12 +136,28 @@ public final class PriceList {
 			supply[i] = Util.toShortClampUnsigned(supply[i] + otherSupply[i]);
 			demand[i] = Util.toShortClampUnsigned(demand[i] + otherDemand[i]);
 		}
+		invalidatePrices();
 	}
 
 	/** Copy all prices from the argument to this instance. */
 	public void set(@NotNull PriceList prices) {
 		System.arraycopy(prices.demand, 0, this.demand, 0, Merchandise.COUNT);
 		System.arraycopy(prices.supply, 0, this.supply, 0, Merchandise.COUNT);
+		invalidatePrices();
+	}
+
+	/** Sum of differences in the supply/demand balance (which determines the base price) of all merchandise.
+	 * Difference of 1 corresponds to about 2% change of the base price. */
+	public int balanceDifference(@NotNull PriceList prices) {
+		final short[] supply = this.supply;
+		final short[] demand = this.demand;
+		final short[] otherSupply = prices.supply;
+		final short[] otherDemand = prices.demand;
+		int difference = 0;
+		for (int i = 0; i < Merchandise.COUNT; i++) {
+			difference += Math.abs((demand[i] - supply[i]) - (otherDemand[i] - otherSupply[i]));
+		}
+		return difference;
 	}
 
 	/** Scale both supply and demand by given multiplier. */
@@ -108,6 +168,7 @@ public final class PriceList {
 			supply[i] = Util.toShortClampUnsigned(MathUtils.round(supply[i] * multiplier));
 			demand[i] = Util.toShortClampUnsigned(MathUtils.round(demand[i] * multiplier));
 		}
+		invalidatePrices();
 	}
 
 	@Override
@@ -129,5 +190,6 @@ public final class PriceList {
 		final EnumSerializer.Reader reader = Merchandise.SERIALIZER.read(input);
 		reader.read(input, this.supply);
 		reader.read(input, this.demand);
+		invalidatePrices();
 	}
 }
@@ -2,6 +2,7 @@ package caravan.util;
 
 import caravan.components.TownC;
 import caravan.world.Merchandise;
+import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.utils.Pool;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
@@ -12,7 +13,10 @@ import java.util.Arrays;
 /**
  * What does a caravan remember.
  *
- * Stores sets of (townEntityId, day of the memory, price by merchandise id []).
+ * Stores sets of (townEntityId, day of the memory, {@link PriceSnapshot}).
+ * Snapshots can be shared with other memories, see {@link caravan.services.MarketBoardService}.
+ * Slots are found by town through a small open-addressing hash table
+ * and the least recently remembered slot is overwritten when the memory is full.
  */
 public final class PriceMemory implements Pool.Poolable {
 
@@ -20,9 +24,15 @@ public final class PriceMemory implements Pool.Poolable {
 	private int[] townEntityIds;
 	/** Day (as recorded by {@link caravan.services.TimeService}) in which this memory was made. */
 	private int[] memoryDay;
-	/** Packed prices, the size is {@code memoryCount * merchandise count},
-	 * prices for n-th memory starts at {@code n * merchandise count} */
-	private short[] buyPrices, sellPrices;
+	/** Remembered prices of each memory, null if there is no memory. */
+	private PriceSnapshot[] snapshots;
+	private static final short[] NO_PRICES = new short[Merchandise.COUNT];
+
+	/** Open-addressing (linear probing) table from town entity to {@code slot + 1}, 0 when empty. Size is a power of two. */
+	private int[] townSlotKeys, townSlotValues;
+	/** Slots in order in which they were remembered, as a doubly linked list, head is the oldest or an empty slot. */
+	private int[] olderSlot, newerSlot;
+	private int oldestSlot, newestSlot;
 
 	/**
 	 * @param memoryCapacity how many towns does the caravan remember
@@ -30,27 +40,138 @@ public final class PriceMemory implements Pool.Poolable {
 	public PriceMemory(int memoryCapacity) {
 		townEntityIds = new int[memoryCapacity];
 		memoryDay = new int[memoryCapacity];
-		buyPrices = new short[memoryCapacity * Merchandise.COUNT];
-		sellPrices = new short[memoryCapacity * Merchandise.COUNT];
+		snapshots = new PriceSnapshot[memoryCapacity];
 		reset();
 	}
 
 	@Override
 	public void reset() {
 		Arrays.fill(townEntityIds, -1);
+		Arrays.fill(snapshots, null);
+		rebuildIndex();
+	}
+
+	/** Rebuild the town table and the slot order from {@link #townEntityIds} and {@link #memoryDay}. */
+	private void rebuildIndex() {
+		final int capacity = townEntityIds.length;
+		final int tableSize = MathUtils.nextPowerOfTwo(Math.max(capacity * 2, 4));
+		if (townSlotKeys == null || townSlotKeys.length != tableSize) {
+			townSlotKeys = new int[tableSize];
+			townSlotValues = new int[tableSize];
+		} else {
+			Arrays.fill(townSlotValues, 0);
+		}
+		for (int slot = 0; slot < capacity; slot++) {
+			if (townEntityIds[slot] != -1) {
+				tablePut(townEntityIds[slot], slot);
+			}
+		}
+
+		// Order by age, empty slots first
+		final Integer[] order = new Integer[capacity];
+		for (int i = 0; i < capacity; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(slotAge(a), slotAge(b)));
+		olderSlot = new int[capacity];
+		newerSlot = new int[capacity];
+		oldestSlot = capacity == 0 ? -1 : order[0];
+		newestSlot = capacity == 0 ? -1 : order[capacity - 1];
+		for (int i = 0; i < capacity; i++) {
+			olderSlot[order[i]] = i == 0 ? -1 : order[i - 1];
+			newerSlot[order[i]] = i == capacity - 1 ? -1 : order[i + 1];
+		}
+	}
+
+	private long slotAge(int slot) {
+		return townEntityIds[slot] == -1 ? Long.MIN_VALUE : memoryDay[slot];
+	}
+
+	private int tableIndex(int townEntity) {
+		// Fibonacci hashing, entity ids tend to be sequential
+		return (townEntity * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(townSlotKeys.length));
+	}
+
+	private int tableGet(int townEntity) {
+		final int[] keys = this.townSlotKeys;
+		final int[] values = this.townSlotValues;
+		final int mask = keys.length - 1;
+		for (int i = tableIndex(townEntity); ; i = (i + 1) & mask) {
+			final int value = values[i];
+			if (value == 0) {
+				return -1;
+			}
+			if (keys[i] == townEntity) {
+				return value - 1;
+			}
+		}
+	}
+
+	private void tablePut(int townEntity, int slot) {
+		final int[] keys = this.townSlotKeys;
+		final int[] values = this.townSlotValues;
+		final int mask = keys.length - 1;
+		int i = tableIndex(townEntity);
+		while (values[i] != 0 && keys[i] != townEntity) {
+			i = (i + 1) & mask;
+		}
+		keys[i] = townEntity;
+		values[i] = slot + 1;
+	}
+
+	private void tableRemove(int townEntity) {
+		final int[] keys = this.townSlotKeys;
+		final int[] values = this.townSlotValues;
+		final int mask = keys.length - 1;
+		int i = tableIndex(townEntity);
+		while (keys[i] != townEntity || values[i] == 0) {
+			if (values[i] == 0) {
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		// Backward shift deletion, so that no tombstones are needed
+		int next = (i + 1) & mask;
+		while (values[next] != 0) {
+			final int home = tableIndex(keys[next]);
+			// Move the entry to the hole if the hole is between its home and its current position
+			if (((next - home) & mask) >= ((next - i) & mask)) {
+				keys[i] = keys[next];
+				values[i] = values[next];
+				i = next;
+			}
+			next = (next + 1) & mask;
+		}
+		values[i] = 0;
+	}
+
+	/** Move the slot to the newest end of the slot order. */
+	private void touch(int slot) {
+		if (slot == newestSlot) {
+			return;
+		}
+		// Unlink
+		final int older = olderSlot[slot];
+		final int newer = newerSlot[slot];
+		if (older == -1) {
+			oldestSlot = newer;
+		} else {
+			newerSlot[older] = newer;
+		}
+		olderSlot[newer] = older;
+		// Link as newest
+		olderSlot[slot] = newestSlot;
+		newerSlot[slot] = -1;
+		newerSlot[newestSlot] = slot;
+		newestSlot = slot;
 	}
 
 	private void swap(int index0, int index1) {
 		Util.swap(townEntityIds, index0, index1);
 		Util.swap(memoryDay, index0, index1);
-		index0 *= Merchandise.COUNT;
-		index1 *= Merchandise.COUNT;
-		final short[] buyPrices = this.buyPrices;
-		final short[] sellPrices = this.sellPrices;
-		for (int i = 0; i < Merchandise.COUNT; i++) {
-			Util.swap(buyPrices, index0 + i, index1 + i);
-			Util.swap(sellPrices, index0 + i, index1 + i);
-		}
+		final PriceSnapshot snapshot = snapshots[index0];
+		snapshots[index0] = snapshots[index1];
+		snapshots[index1] = snapshot;
 	}
 
 	private boolean resize_shouldSwap(int index0, int index1) {
@@ -86,41 +207,34 @@ public final class PriceMemory implements Pool.Poolable {
 			Arrays.fill(townEntityIds, currentMemoryCount, newMemoryCount, -1);
 		}
 		memoryDay = Arrays.copyOf(memoryDay, newMemoryCount);
-		buyPrices = Arrays.copyOf(buyPrices, newMemoryCount * Merchandise.COUNT);
-		sellPrices = Arrays.copyOf(sellPrices, newMemoryCount * Merchandise.COUNT);
-	}
-
-	private int indexOfTown(int townEntity, boolean toWrite) {
-		int index = Util.indexOf(townEntityIds, townEntity);
-		if (index != -1 || !toWrite) {
-			return index;
-		}
-		// Find index to overwrite
-		final int freeIndex = Util.indexOf(townEntityIds, -1);
-		if (freeIndex >= 0) {
-			return freeIndex;
-		}
-		// There are no free memory slots, kick out the oldest memory
-		return Util.minIndex(memoryDay);
+		snapshots = Arrays.copyOf(snapshots, newMemoryCount);
+		rebuildIndex();
 	}
 
+	/** Remember current prices of the town, in a snapshot that is not shared with anyone.
+	 * @param today must not be earlier than the day of any previous memory */
 	public void remember(int today, int townEntity, @NotNull TownC town) {
-		final int index = indexOfTown(townEntity, true);
-		townEntityIds[index] = townEntity;
-		memoryDay[index] = today;
-
-		final int priceOffset = index * Merchandise.COUNT;
-		final Merchandise[] merchandise = Merchandise.VALUES;
-		final PriceList prices = town.prices;
-		final short[] buyPrices = this.buyPrices;
-		final short[] sellPrices = this.sellPrices;
+		remember(PriceSnapshot.of(townEntity, today, town));
+	}
 
-		for (int i = 0; i < Merchandise.COUNT; i++) {
-			final Merchandise m = merchandise[i];
-			final int priceIndex = priceOffset + i;
-			buyPrices[priceIndex] = Util.toShortClampUnsigned(prices.buyPrice(m));
-			sellPrices[priceIndex] = Util.toShortClampUnsigned(town.realSellPrice(m));
+	/** Remember the prices of the snapshot.
+	 * Its day must not be earlier than the day of any previous memory. */
+	public void remember(@NotNull PriceSnapshot snapshot) {
+		final int townEntity = snapshot.townEntity;
+		int index = tableGet(townEntity);
+		if (index == -1) {
+			// Overwrite a free slot or the oldest memory, they are at the start of the order
+			index = oldestSlot;
+			final int forgottenTown = townEntityIds[index];
+			if (forgottenTown != -1) {
+				tableRemove(forgottenTown);
+			}
+			tablePut(townEntity, index);
 		}
+		touch(index);
+		townEntityIds[index] = townEntity;
+		memoryDay[index] = snapshot.day;
+		snapshots[index] = snapshot;
 	}
 
 	/** Total capacity of this memory.
@@ -145,7 +259,7 @@ public final class PriceMemory implements Pool.Poolable {
 	 * @return id or -1 if no such memory slot
 	 */
 	public int validSlotForTown(int townEntity, int noOlderThanDay) {
-		final int i = Util.indexOf(townEntityIds, townEntity);
+		final int i = tableGet(townEntity);
 		if (i < 0 || memoryDay[i] < noOlderThanDay) {
 			return -1;
 		}
@@ -154,12 +268,42 @@ public final class PriceMemory implements Pool.Poolable {
 
 	/** Return the remembered buy price at the given memory slot for the given merchandise. */
 	public int buyPrice(int slot, @NotNull Merchandise m) {
-		return buyPrices[slot * townEntityIds.length + m.ordinal()];
+		return snapshots[slot].buyPrices[m.ordinal()];
 	}
 
 	/** Return the remembered sell price at the given memory slot for the given merchandise. */
 	public int sellPrice(int slot, @NotNull Merchandise m) {
-		return sellPrices[slot * townEntityIds.length + m.ordinal()];
+		return snapshots[slot].sellPrices[m.ordinal()];
+	}
+
+	/**
+	 * Find the trade with the largest total profit, when buying merchandise here and selling it in a remembered town.
+	 * @param buyAmounts how many units of each merchandise (by ordinal) can be bought here, 0 for none
+	 * @param buyPrices for how much can each merchandise (by ordinal) be bought here
+	 * @param minProfit only trades with larger total profit are considered
+	 * @param noOlderThanDay see {@link #isMemorySlotValid(int, int, int)}
+	 * @param notThisTownEntity see {@link #isMemorySlotValid(int, int, int)}
+	 * @return {@code slot * Merchandise.COUNT + merchandise ordinal} of the best trade, or -1 if there is none
+	 */
+	public int bestSpread(int @NotNull [] buyAmounts, int @NotNull [] buyPrices, int minProfit, int noOlderThanDay, int notThisTownEntity) {
+		final int capacity = townEntityIds.length;
+		int best = -1;
+		int bestProfit = minProfit;
+		for (int slot = 0; slot < capacity; slot++) {
+			if (!isMemorySlotValid(slot, noOlderThanDay, notThisTownEntity)) {
+				continue;
+			}
+
+			final short[] sellPrices = snapshots[slot].sellPrices;
+			for (int m = 0; m < Merchandise.COUNT; m++) {
+				final int profit = buyAmounts[m] * (sellPrices[m] - buyPrices[m]);
+				if (profit > bestProfit) {
+					bestProfit = profit;
+					best = slot * Merchandise.COUNT + m;
+				}
+			}
+		}
+		return best;
 	}
 
 	/** Return the town entity ID for the memory at the given slot. */
@@ -176,12 +320,12 @@ public final class PriceMemory implements Pool.Poolable {
 		output.writeInts(townEntityIds, 0, memoryCapacity);
 		output.writeInts(memoryDay, 0, memoryCapacity);
 
-		final short[] buyPrices = this.buyPrices;
-		final short[] sellPrices = this.sellPrices;
+		final PriceSnapshot[] snapshots = this.snapshots;
 		final EnumSerializer.Writer writer = Merchandise.SERIALIZER.write(output);
 		for (int i = 0; i < memoryCapacity; i++) {
-			writer.write(output, buyPrices, i * Merchandise.COUNT, Merchandise.COUNT);
-			writer.write(output, sellPrices, i * Merchandise.COUNT, Merchandise.COUNT);
+			final PriceSnapshot snapshot = snapshots[i];
+			writer.write(output, snapshot == null ? NO_PRICES : snapshot.buyPrices, 0, Merchandise.COUNT);
+			writer.write(output, snapshot == null ? NO_PRICES : snapshot.sellPrices, 0, Merchandise.COUNT);
 		}
 	}
 
@@ -199,12 +343,16 @@ public final class PriceMemory implements Pool.Poolable {
 			memoryDay[i] = input.readInt();
 		}
 
-		final short[] buyPrices = this.buyPrices;
-		final short[] sellPrices = this.sellPrices;
+		// Loaded snapshots are not shared, until the town is visited again
+		final PriceSnapshot[] snapshots = this.snapshots;
 		final EnumSerializer.Reader reader = Merchandise.SERIALIZER.read(input);
 		for (int i = 0; i < memoryCapacity; i++) {
-			reader.read(input, buyPrices, i * Merchandise.COUNT, Merchandise.COUNT);
-			reader.read(input, sellPrices, i * Merchandise.COUNT, Merchandise.COUNT);
+			final short[] buyPrices = new short[Merchandise.COUNT];
+			final short[] sellPrices = new short[Merchandise.COUNT];
+			reader.read(input, buyPrices, 0, Merchandise.COUNT);
+			reader.read(input, sellPrices, 0, Merchandise.COUNT);
+			snapshots[i] = townEntityIds[i] == -1 ? null : new PriceSnapshot(townEntityIds[i], memoryDay[i], buyPrices, sellPrices);
 		}
+		rebuildIndex();
 	}
 }
@@ -0,0 +1,37 @@
+package caravan.util;
+
+import caravan.components.TownC;
+import caravan.world.Merchandise;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Immutable record of prices in a town on some day.
+ * Can be shared by any number of {@link PriceMemory}s.
+ */
+public final class PriceSnapshot {
+
+	public final int townEntity;
+	/** Day (as recorded by {@link caravan.services.TimeService}) in which the prices were recorded. */
+	public final int day;
+	/** Prices by merchandise ordinal. */
+	final short @NotNull [] buyPrices, sellPrices;
+
+	PriceSnapshot(int townEntity, int day, short @NotNull [] buyPrices, short @NotNull [] sellPrices) {
+		this.townEntity = townEntity;
+		this.day = day;
+		this.buyPrices = buyPrices;
+		this.sellPrices = sellPrices;
+	}
+
+	/** Record current prices of the town. */
+	public static @NotNull PriceSnapshot of(int townEntity, int day, @NotNull TownC town) {
+		final short[] buyPrices = new short[Merchandise.COUNT];
+		final short[] sellPrices = new short[Merchandise.COUNT];
+		final PriceList prices = town.prices;
+		for (Merchandise m : Merchandise.VALUES) {
+			buyPrices[m.ordinal()] = Util.toShortClampUnsigned(prices.buyPrice(m));
+			sellPrices[m.ordinal()] = Util.toShortClampUnsigned(town.realSellPrice(m));
+		}
+		return new PriceSnapshot(townEntity, day, buyPrices, sellPrices);
+	}
+}
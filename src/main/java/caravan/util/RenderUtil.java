@@ -1,6 +1,7 @@
 package caravan.util;
 
 import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.Batch;
 import com.badlogic.gdx.graphics.g2d.TextureAtlas;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
@@ -19,7 +20,14 @@ public final class RenderUtil {
 		Arrays.fill(draw_vertices, Color.WHITE.toFloatBits()); // So we don't have to set the color
 	}
 
-	public static void drawTile(@NotNull Batch b, @NotNull TextureRegion base, int x, int y) {
+	/** Something that accepts sprite vertices in {@link Batch} format, like {@link Batch#draw(Texture, float[], int, int)}
+	 * or {@link com.badlogic.gdx.graphics.g2d.SpriteCache#add(Texture, float[], int, int)}. */
+	@FunctionalInterface
+	public interface VertexSink {
+		void draw(@NotNull Texture texture, float @NotNull [] vertices, int offset, int count);
+	}
+
+	public static void drawTile(@NotNull VertexSink b, @NotNull TextureRegion base, int x, int y) {
 		final float u = base.getU();
 		final float v = base.getV2();
 		final float u2 = base.getU2();
@@ -49,7 +57,7 @@ public final class RenderUtil {
 		b.draw(base.getTexture(), vertices, 0, vertices.length);
 	}
 
-	public static void drawTile(@NotNull Batch b, @Nullable TextureAtlas.AtlasRegion region, int x, int y) {
+	public static void drawTile(@NotNull VertexSink b, @Nullable TextureAtlas.AtlasRegion region, int x, int y) {
 		if (region == null) {
 			return;
 		}
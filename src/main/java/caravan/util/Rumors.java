@@ -3,6 +3,7 @@ package caravan.util;
 import caravan.components.TownC;
 import caravan.world.Merchandise;
 import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.LongMap;
 import com.badlogic.gdx.utils.Pool;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
@@ -11,38 +12,117 @@ import org.jetbrains.annotations.Nullable;
 
 /**
  * List of saucy rumors.
+ *
+ * Rumors are kept in a list ordered by age (rumors are always added or refreshed with the current day, so that is also
+ * the order of insertion) and indexed by what they are about, so that adding, refreshing and forgetting is cheap.
  */
 public final class Rumors implements Pool.Poolable {
 
 	public int maxSize;
-	public final PooledArray<Rumor> rumors = new PooledArray<>(Rumor::new);
+	private int size = 0;
+	/** Ends of the list of rumors, ordered by age. */
+	private @Nullable Rumor newest, oldest;
+	/** Rumors by {@link #key(RumorType, int, Merchandise)}. */
+	private final LongMap<Rumor> index = new LongMap<>();
+	/** Unused rumor instances, linked through {@link Rumor#older}. */
+	private @Nullable Rumor free;
 
 	public Rumors(int maxSize) {
 		this.maxSize = maxSize;
 	}
 
+	private static long key(@NotNull RumorType type, int aboutTownEntity, @Nullable Merchandise aboutMerchandise) {
+		return ((long) aboutTownEntity << 32) | ((long) type.ordinal() << 16) | (aboutMerchandise == null ? 0xFFFF : aboutMerchandise.ordinal());
+	}
+
+	/** @return amount of rumors */
+	public int size() {
+		return size;
+	}
+
+	/** @return the newest rumor, continue with {@link Rumor#older()} to iterate through all of them, or null when there are none */
+	public @Nullable Rumor newest() {
+		return newest;
+	}
+
 	public void addPriceRumor(boolean buyPrice, int townEntity, @NotNull Merchandise merch, int price, int today) {
 		final RumorType type = buyPrice ? RumorType.BUY_PRICE : RumorType.SELL_PRICE;
 
 		// First check whether we can update an existing rumor
-		for (int i = 0; i < rumors.size; i++) {
-			final Rumor rumor = rumors.get(i);
-			if (rumor.type == type && rumor.aboutTownEntity == townEntity && rumor.aboutMerchandise == merch) {
-				rumor.aboutPrice = Util.toShortClampUnsigned(price);
-				rumor.day = today;
-				update(today);
-				return;
+		final long key = key(type, townEntity, merch);
+		Rumor rumor = index.get(key);
+		if (rumor != null) {
+			unlink(rumor);
+		} else {
+			// Nope, create a new rumor
+			if (size >= maxSize && oldest != null) {
+				forget(oldest);
 			}
+			rumor = obtain();
+			index.put(key, rumor);
+			size++;
+		}
+		rumor.set(type, today, townEntity, merch, price);
+		linkNewest(rumor);
+	}
+
+	private @NotNull Rumor obtain() {
+		final Rumor rumor = free;
+		if (rumor == null) {
+			return new Rumor();
+		}
+		free = rumor.older;
+		rumor.older = null;
+		return rumor;
+	}
+
+	private void unlink(@NotNull Rumor rumor) {
+		if (rumor.newer == null) {
+			newest = rumor.older;
+		} else {
+			rumor.newer.older = rumor.older;
 		}
+		if (rumor.older == null) {
+			oldest = rumor.newer;
+		} else {
+			rumor.older.newer = rumor.newer;
+		}
+		rumor.newer = null;
+		rumor.older = null;
+	}
 
-		// Nope, create a new rumor
-		rumors.add().set(type, today, townEntity, merch, price);
-		update(today);
+	private void linkNewest(@NotNull Rumor rumor) {
+		rumor.older = newest;
+		if (newest == null) {
+			oldest = rumor;
+		} else {
+			newest.newer = rumor;
+		}
+		newest = rumor;
 	}
 
+	private void linkOldest(@NotNull Rumor rumor) {
+		rumor.newer = oldest;
+		if (oldest == null) {
+			newest = rumor;
+		} else {
+			oldest.older = rumor;
+		}
+		oldest = rumor;
+	}
+
+	private void forget(@NotNull Rumor rumor) {
+		unlink(rumor);
+		index.remove(key(rumor.type, rumor.aboutTownEntity, rumor.aboutMerchandise));
+		size--;
+		rumor.older = free;
+		free = rumor;
+	}
+
+	/** Add rumors about the best deals from the caravan's memory. */
 	public void addRandomPriceRumors(@NotNull PriceMemory caravanMemory, @NotNull TownC town, int thisTownEntity, int today) {
-		final int offset = MathUtils.random.nextInt(Merchandise.COUNT);
-		int count = MathUtils.random(5, 10);
+		final int offset = MathUtils.random.nextInt(Merchandise.TRADEABLE.length);
+		final int count = Math.min(MathUtils.random(5, 10), Merchandise.TRADEABLE.length);
 		final PriceList townPrices = town.prices;
 
 		Merchandise bestBuyPriceMerch = null;
@@ -56,11 +136,7 @@ public final class Rumors implements Pool.Poolable {
 		int bestSellPriceTown = -1;
 
 		for (int i = 0; i < count; i++) {
-			final Merchandise m = Merchandise.VALUES[(offset + i) % Merchandise.COUNT];
-			if (!m.tradeable) {
-				count++;
-				continue;
-			}
+			final Merchandise m = Merchandise.TRADEABLE[(offset + i) % Merchandise.TRADEABLE.length];
 
 			final int localBuyPrice = townPrices.buyPrice(m);
 			final int localSellPrice = town.realSellPrice(m);
@@ -99,25 +175,24 @@ public final class Rumors implements Pool.Poolable {
 		}
 	}
 
-	/** Sort, cleanup and remove rumors that are too old. */
+	/** Remove rumors that are too old. Only looks at the rumors that are forgotten, so it is cheap to call every day. */
 	public void update(int today) {
-		rumors.sort();
-		rumors.size = Math.min(rumors.size, maxSize);
-		while (rumors.size > 0 && (rumors.get(rumors.size - 1).day < today - 30 || (rumors.get(rumors.size - 1).day < today - 20 && MathUtils.randomBoolean()))) {
-			rumors.size--;
+		Rumor oldest;
+		while ((oldest = this.oldest) != null && (oldest.day < today - 30 || (oldest.day < today - 20 && MathUtils.randomBoolean()))) {
+			forget(oldest);
 		}
 	}
 
 	public void save(@NotNull Output output) {
-		output.writeVarInt(rumors.size, true);
-		if (rumors.size <= 0) {
+		output.writeVarInt(size, true);
+		if (size <= 0) {
 			return;
 		}
 
 		final EnumSerializer.Writer<RumorType> rumorWriter = RumorType.SERIALIZER.write(output);
 		final EnumSerializer.Writer<Merchandise> merchWriter = Merchandise.SERIALIZER.write(output);
-		for (int i = 0; i < rumors.size; i++) {
-			final Rumor rumor = rumors.get(i);
+		// Newest first
+		for (Rumor rumor = newest; rumor != null; rumor = rumor.older) {
 			rumorWriter.writeValue(output, rumor.type);
 			output.writeInt(rumor.day);
 			output.writeInt(rumor.aboutTownEntity);
@@ -127,28 +202,40 @@ public final class Rumors implements Pool.Poolable {
 	}
 
 	public void load(@NotNull Input input) {
-		rumors.clear();
+		reset();
 		final int size = input.readVarInt(true);
 		if (size == 0) {
 			return;
 		}
-		rumors.ensureCapacity(size);
 
 		final EnumSerializer.Reader<RumorType> rumorReader = RumorType.SERIALIZER.read(input);
 		final EnumSerializer.Reader<Merchandise> merchReader = Merchandise.SERIALIZER.read(input);
 		for (int i = 0; i < size; i++) {
-			final Rumor rumor = rumors.add();
+			final Rumor rumor = obtain();
 			rumor.type = rumorReader.readValue(input, RumorType.THING_EXISTS);
 			rumor.day = input.readInt();
 			rumor.aboutTownEntity = input.readInt();
 			rumor.aboutMerchandise = merchReader.readValueOrNull(input, null);
 			rumor.aboutPrice = input.readShort();
+
+			final long key = key(rumor.type, rumor.aboutTownEntity, rumor.aboutMerchandise);
+			if (index.containsKey(key)) {
+				// Duplicate, older rumor, the newer one was already loaded
+				rumor.older = free;
+				free = rumor;
+				continue;
+			}
+			index.put(key, rumor);
+			linkOldest(rumor);
+			this.size++;
 		}
 	}
 
 	@Override
 	public void reset() {
-		rumors.clear();
+		while (oldest != null) {
+			forget(oldest);
+		}
 	}
 
 	public enum RumorType {
@@ -162,7 +249,7 @@ public final class Rumors implements Pool.Poolable {
 		});
 	}
 
-	public static final class Rumor implements Comparable<Rumor> {
+	public static final class Rumor {
 		public @NotNull RumorType type = RumorType.THING_EXISTS;
 		public int day;
 
@@ -170,6 +257,14 @@ public final class Rumors implements Pool.Poolable {
 		public @Nullable Merchandise aboutMerchandise;
 		public short aboutPrice;
 
+		/** Neighbors in the age ordered list. */
+		@Nullable Rumor newer, older;
+
+		/** @return the next older rumor or null if this is the oldest one */
+		public @Nullable Rumor older() {
+			return older;
+		}
+
 		public void set(@NotNull RumorType type, int day, int aboutTownEntity, @Nullable Merchandise aboutMerchandise, int aboutPrice) {
 			this.type = type;
 			this.day = day;
@@ -177,12 +272,6 @@ public final class Rumors implements Pool.Poolable {
 			this.aboutMerchandise = aboutMerchandise;
 			this.aboutPrice = Util.toShortClampUnsigned(aboutPrice);
 		}
-
-		@Override
-		public int compareTo(@NotNull Rumors.Rumor o) {
-			// Newest first
-			return Integer.compare(o.day, this.day);
-		}
 	}
 
 }
@@ -22,7 +22,7 @@ public final class SpriteAnimation extends Id<SpriteAnimation> {
 		this.frameTime = frameTime;
 
 		assert frames.length >= 1;
-		assert frameTime * 144f >= 1f : "Frame time is too low!"; // RenderSystem algorithm for animation advancement is not efficient for small values.
+		assert frameTime > 0f : "Frame time must be positive";
 	}
 
 	public SpriteAnimation(int id, float frameTime, @NotNull String...frames) {
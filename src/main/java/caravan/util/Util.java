@@ -1,11 +1,9 @@
 package caravan.util;
 
 import caravan.CaravanApplication;
-import caravan.components.PositionC;
 import caravan.components.TownC;
 import caravan.world.Merchandise;
 import com.badlogic.gdx.math.MathUtils;
-import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.scenes.scene2d.Actor;
 import com.badlogic.gdx.scenes.scene2d.Event;
 import com.badlogic.gdx.scenes.scene2d.EventListener;
@@ -181,29 +179,6 @@ public final class Util {
 		}
 	}
 
-	public static int findClosest(@NotNull EntitySetView entitySet, @NotNull Mapper<PositionC> positionMapper, @NotNull Vector2 target) {
-		int nearest = -1;
-		float nearestDist2 = Float.MAX_VALUE;
-
-		final IntArray entitiesArray = entitySet.getIndices();
-		final int[] entities = entitiesArray.items;
-		final int entitiesSize = entitiesArray.size;
-		for (int i = 0; i < entitiesSize; i++) {
-			final int entity = entities[i];
-
-			final PositionC position = positionMapper.getOrNull(entity);
-			if (position == null) continue;
-
-			final float entityDst2 = PositionC.manhattanDistance(position, target.x, target.y);
-			if (entityDst2 < nearestDist2) {
-				nearest = entity;
-				nearestDist2 = entityDst2;
-			}
-		}
-
-		return nearest;
-	}
-
 	public static final EventListener ALL_HANDLING_INPUT_LISTENER = event -> event instanceof InputEvent;
 
 	public static @NotNull String getName(@Nullable Merchandise m) {
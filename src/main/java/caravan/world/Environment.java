@@ -1,5 +1,7 @@
 package caravan.world;
 
+import caravan.services.Id;
+import caravan.util.Inventory;
 import com.badlogic.gdx.utils.Pool;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
@@ -39,6 +41,54 @@ public final class Environment implements Pool.Poolable {
 	public float stoneOccurrence;
 	public float limestoneOccurrence;
 
+	/** Results of {@link Production#produce} in this environment, indexed by {@link Id.Registry#denseIndex(Id)}.
+	 * They depend only on the environment, so they are computed only after it {@link #changed()}. */
+	private float[] productionOutputs;
+	/** Like {@link #productionOutputs}, but a row of consumed amounts, indexed by {@link Merchandise#ordinal()}. */
+	private float[][] productionInputs;
+	private boolean productionValid = false;
+
+	/** Must be called after the fields of this environment are changed, to drop the cached production results. */
+	public void changed() {
+		productionValid = false;
+	}
+
+	private void validateProduction() {
+		if (productionValid) {
+			return;
+		}
+		final Id.Registry<Production> registry = Production.REGISTRY;
+		final int productionCount = registry.count();
+		if (productionOutputs == null || productionOutputs.length != productionCount) {
+			productionOutputs = new float[productionCount];
+			productionInputs = new float[productionCount][Merchandise.COUNT];
+		}
+		final Inventory input = new Inventory();
+		for (int p = 0; p < productionCount; p++) {
+			input.reset();
+			productionOutputs[p] = registry.getDense(p).produce(this, input);
+			final float[] inputRow = productionInputs[p];
+			for (Merchandise m : Merchandise.VALUES) {
+				inputRow[m.ordinal()] = input.get(m);
+			}
+		}
+		productionValid = true;
+	}
+
+	/** @return how many units of {@link Production#output} each production creates in this environment,
+	 * indexed by {@link Id.Registry#denseIndex(Id)}. Do not modify! */
+	public float @NotNull [] productionOutputs() {
+		validateProduction();
+		return productionOutputs;
+	}
+
+	/** @return how many units of each merchandise each production consumes in this environment,
+	 * indexed by {@link Id.Registry#denseIndex(Id)} and {@link Merchandise#ordinal()}. Do not modify! */
+	public float @NotNull [] @NotNull [] productionInputs() {
+		validateProduction();
+		return productionInputs;
+	}
+
 	@Override
 	public void reset() {
 		hasFreshWater = false;
@@ -55,6 +105,7 @@ public final class Environment implements Pool.Poolable {
 		jewelOccurrence = 0;
 		stoneOccurrence = 0;
 		limestoneOccurrence = 0;
+		changed();
 	}
 
 	public void save(@NotNull Output output) {
@@ -87,5 +138,6 @@ public final class Environment implements Pool.Poolable {
 		jewelOccurrence = input.readFloat();
 		stoneOccurrence = input.readFloat();
 		limestoneOccurrence = input.readFloat();
+		changed();
 	}
 }
@@ -3,6 +3,7 @@ package caravan.world;
 import caravan.util.EnumSerializer;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Arrays;
 import java.util.EnumSet;
 
 /**
@@ -87,6 +88,8 @@ public enum Merchandise {
 
 	public static final @NotNull Merchandise @NotNull [] VALUES = SERIALIZER.currentValues();
 	public static final int COUNT = VALUES.length;
+	/** {@link #VALUES} which are {@link #tradeable}. */
+	public static final @NotNull Merchandise @NotNull [] TRADEABLE = Arrays.stream(VALUES).filter(m -> m.tradeable).toArray(Merchandise[]::new);
 
 	Merchandise(String name, boolean tradeable, @NotNull Category category) {
 		this(name, name.toLowerCase(), tradeable, category);
@@ -413,6 +413,19 @@ public abstract class Production extends Id<Production> {
 		});
 	}
 
+	/** {@link #output} ordinal of each production, indexed by {@link Id.Registry#denseIndex(Id)}.
+	 * Together with {@link Environment#productionOutputs()} and {@link Environment#productionInputs()}
+	 * forms the production matrix of an environment. */
+	public static final int @NotNull [] DENSE_OUTPUT = compileDenseOutput();
+
+	private static int @NotNull [] compileDenseOutput() {
+		final int[] result = new int[REGISTRY.count()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = REGISTRY.getDense(i).output.ordinal();
+		}
+		return result;
+	}
+
 	private static int alternativeLevel = 0;
 
 	private static short alternatives(short nextId, Merchandise[] alternatives, BiConsumer<short[], Merchandise> create) {
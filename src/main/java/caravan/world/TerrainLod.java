@@ -0,0 +1,147 @@
+package caravan.world;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Disposable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Low detail version of the whole tile map, for when the camera is zoomed out so much that the tiles are only a few pixels big.
+ * The tiles are pre-rendered into a texture with a full mipmap chain, which is then drawn as a single quad.
+ * Changed tiles are re-rendered into the texture before it is used again.
+ */
+public final class TerrainLod implements Disposable {
+
+	/** How many pixels does a tile have in the most detailed level. Tiles smaller than this on screen use the LOD. */
+	public static final int TILE_PIXELS = 4;
+	private static final int MAX_TEXTURE_SIZE = 4096;
+
+	private @Nullable FrameBuffer frameBuffer;
+	private int worldWidth, worldHeight;
+	private int tilePixels;
+
+	/** Region of tiles that has to be re-rendered, inclusive, empty when min > max. */
+	private int dirtyMinX, dirtyMinY, dirtyMaxX, dirtyMaxY;
+
+	private static final Matrix4 IDENTITY = new Matrix4();
+	private final Matrix4 render_projection = new Matrix4();
+	private final Matrix4 render_oldProjection = new Matrix4();
+	private final Matrix4 render_oldTransform = new Matrix4();
+
+	public TerrainLod() {
+		clearDirty();
+	}
+
+	private void clearDirty() {
+		dirtyMinX = dirtyMinY = Integer.MAX_VALUE;
+		dirtyMaxX = dirtyMaxY = Integer.MIN_VALUE;
+	}
+
+	/** Notify that the tile at given position has changed. */
+	public void invalidate(int x, int y) {
+		// Overlaps of the neighbors depend on the tile as well
+		dirtyMinX = Math.min(dirtyMinX, x - 1);
+		dirtyMinY = Math.min(dirtyMinY, y - 1);
+		dirtyMaxX = Math.max(dirtyMaxX, x + 1);
+		dirtyMaxY = Math.max(dirtyMaxY, y + 1);
+	}
+
+	/** Notify that any tile may have changed. */
+	public void invalidateAll() {
+		dirtyMinX = dirtyMinY = Integer.MIN_VALUE / 2;
+		dirtyMaxX = dirtyMaxY = Integer.MAX_VALUE / 2;
+	}
+
+	/** @param pixelsPerTile how big is a tile on the screen
+	 * @return whether the LOD should be used instead of drawing the tiles */
+	public static boolean shouldUse(float pixelsPerTile) {
+		return pixelsPerTile < TILE_PIXELS;
+	}
+
+	/** Draw the whole world. Batch must not be drawing. */
+	public void render(@NotNull TileOverlapGrid tiles, @NotNull Batch batch) {
+		if (frameBuffer == null || worldWidth != tiles.tiles.width || worldHeight != tiles.tiles.height) {
+			create(tiles.tiles.width, tiles.tiles.height);
+		}
+		final FrameBuffer frameBuffer = this.frameBuffer;
+		if (dirtyMinX <= dirtyMaxX) {
+			update(tiles, batch, frameBuffer);
+		}
+
+		final Texture texture = frameBuffer.getColorBufferTexture();
+		final float u2 = (float) (worldWidth * tilePixels) / texture.getWidth();
+		final float v2 = (float) (worldHeight * tilePixels) / texture.getHeight();
+		batch.begin();
+		batch.draw(texture, 0f, 0f, worldWidth, worldHeight, 0f, 0f, u2, v2);
+		batch.end();
+	}
+
+	private void create(int worldWidth, int worldHeight) {
+		if (frameBuffer != null) {
+			frameBuffer.dispose();
+		}
+		this.worldWidth = worldWidth;
+		this.worldHeight = worldHeight;
+		final int maxSide = Math.max(Math.max(worldWidth, worldHeight), 1);
+		tilePixels = MathUtils.clamp(MAX_TEXTURE_SIZE / maxSide, 1, TILE_PIXELS);
+		// Power of two, so that it can have mipmaps everywhere
+		final int textureWidth = MathUtils.nextPowerOfTwo(worldWidth * tilePixels);
+		final int textureHeight = MathUtils.nextPowerOfTwo(worldHeight * tilePixels);
+		final FrameBuffer frameBuffer = this.frameBuffer = new FrameBuffer(Pixmap.Format.RGBA8888, textureWidth, textureHeight, false);
+		frameBuffer.getColorBufferTexture().setFilter(Texture.TextureFilter.MipMapLinearLinear, Texture.TextureFilter.Linear);
+		invalidateAll();
+	}
+
+	private void update(@NotNull TileOverlapGrid tiles, @NotNull Batch batch, @NotNull FrameBuffer frameBuffer) {
+		final int x0 = Math.max(dirtyMinX, 0);
+		final int y0 = Math.max(dirtyMinY, 0);
+		final int x1 = Math.min(dirtyMaxX, worldWidth - 1);
+		final int y1 = Math.min(dirtyMaxY, worldHeight - 1);
+		clearDirty();
+		if (x0 > x1 || y0 > y1) {
+			return;
+		}
+
+		render_oldProjection.set(batch.getProjectionMatrix());
+		render_oldTransform.set(batch.getTransformMatrix());
+		batch.setProjectionMatrix(render_projection.setToOrtho2D(0f, 0f,
+				(float) frameBuffer.getWidth() / tilePixels, (float) frameBuffer.getHeight() / tilePixels));
+		batch.setTransformMatrix(IDENTITY);
+
+		frameBuffer.begin();
+		final int tilePixels = this.tilePixels;
+		Gdx.gl.glEnable(GL20.GL_SCISSOR_TEST);
+		Gdx.gl.glScissor(x0 * tilePixels, y0 * tilePixels, (x1 - x0 + 1) * tilePixels, (y1 - y0 + 1) * tilePixels);
+		Gdx.gl.glClearColor(0f, 0f, 0f, 1f);
+		Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
+		// Directly, because chunk meshes of the whole world would only be kept around for nothing
+		batch.begin();
+		Tile.drawTiles(tiles, batch, x0, y0, x1, y1);
+		batch.end();
+		Gdx.gl.glDisable(GL20.GL_SCISSOR_TEST);
+		frameBuffer.end();
+
+		batch.setProjectionMatrix(render_oldProjection);
+		batch.setTransformMatrix(render_oldTransform);
+
+		// Rebuild the lower levels of the pyramid
+		final Texture texture = frameBuffer.getColorBufferTexture();
+		texture.bind();
+		Gdx.gl.glGenerateMipmap(GL20.GL_TEXTURE_2D);
+	}
+
+	@Override
+	public void dispose() {
+		if (frameBuffer != null) {
+			frameBuffer.dispose();
+			frameBuffer = null;
+		}
+	}
+}
@@ -33,16 +33,26 @@ public final class Tile extends Id<Tile> {
 	private String[] baseImageNames;
 	private String[] overlapImageNames;
 
+	/** Amount of base textures and whether this has overlap textures, known even before the textures are loaded. */
+	private final int baseVariants;
+	private final boolean hasOverlaps;
+
 	public final float movementSpeedMultiplier;
 
-	public Tile(int id, int height, @NotNull String @NotNull [] bases, @NotNull String @NotNull [] overlaps, float movSpeed) {
+	/** Color of the tile on the minimap, RGBA8888. */
+	public final int mapColor;
+
+	public Tile(int id, int height, @NotNull String @NotNull [] bases, @NotNull String @NotNull [] overlaps, float movSpeed, int mapColor) {
 		super(id, REGISTRY);
 		this.movementSpeedMultiplier = movSpeed;
+		this.mapColor = mapColor;
 		assert bases.length >= 1;
 		assert overlaps.length % OVERLAP_IMAGE_COUNT == 0;
 		this.height = (byte) height;
 		this.baseImageNames = bases;
 		this.overlapImageNames = overlaps;
+		this.baseVariants = bases.length;
+		this.hasOverlaps = overlaps.length > 0;
 	}
 
 	public void ensureLoaded() {
@@ -94,8 +104,6 @@ public final class Tile extends Id<Tile> {
 	private static final byte BOTTOM_RIGHT = 0b0000_0001;
 	//endregion
 
-	private static final Tile[] draw_collisionTiles = new Tile[8];
-
 	private static int murmurHash3(int x, int y) {
 		long h = ((long) x << 32L) | ((long) y & 0xFFFFFFFFL);
 		h ^= h >>> 33;
@@ -106,57 +114,163 @@ public final class Tile extends Id<Tile> {
 		return (int) (h & 0x7FFFFFFF /* Force into being positive */);
 	}
 
-	public static void drawTiles(@NotNull final WorldAttribute<Tile> t, @NotNull final Batch b, final int startX, final int startY, final int endX, final int endY) {
+	//region Layout bits
+	/** In the unused bits between the overlap count and the first overlap, so that it never overlaps packed overlaps. */
+	private static final long LAYOUT_COMPUTED = 1L << 15;
+	private static final int LAYOUT_COUNT_SHIFT = 8;
+	private static final int LAYOUT_OVERFLOW = 0b111;
+	private static final int LAYOUT_MAX_OVERLAPS = 3;
+	private static final int LAYOUT_OVERLAP_SHIFT = 16;
+	//endregion
+
+	private static final Tile[] collect_neighbors = new Tile[8];
+	private static final Tile[] collect_overlapTiles = new Tile[8];
+	private static final byte[] collect_overlapMasks = new byte[8];
+
+	/** Find which overlaps should be drawn over the tile at given position, from the bottom one.
+	 * @return amount of overlaps, stored into {@link #collect_overlapTiles} and {@link #collect_overlapMasks} */
+	private static int collectOverlaps(@NotNull final WorldAttribute<Tile> t, final int x, final int y) {
+		final Tile[] tiles = collect_neighbors;
+		tiles[0] = t.get(x+1,y-1); //BOTTOM_RIGHT
+		tiles[1] = t.get(x-1,y-1); //BOTTOM_LEFT
+		tiles[2] = t.get(x+1,y+1); //TOP_RIGHT
+		tiles[3] = t.get(x-1,y+1); //TOP_LEFT
+		tiles[4] = t.get(x,y-1); //BOTTOM
+		tiles[5] = t.get(x+1,y); //RIGHT
+		tiles[6] = t.get(x-1,y); //LEFT
+		tiles[7] = t.get(x,y+1); //TOP
+
+		int count = 0;
+		byte lastHeight = t.get(x, y).height;
+		while (true) {
+			// Looking for lowest tile that is higher than us/last overlap
+			byte nowHeight = Byte.MAX_VALUE;
+			Tile nowHeightTile = null;
+			for (Tile neighborTile : tiles) {
+				if (neighborTile.height > lastHeight && neighborTile.height < nowHeight && neighborTile.hasOverlaps) {
+					nowHeight = neighborTile.height;
+					nowHeightTile = neighborTile;
+				}
+			}
+			if (nowHeightTile == null) break;
+
+			byte map = 0;
+			for (int i = 0; i < 8; i++) {
+				if(tiles[i].height == nowHeight){
+					map |= 1 << i;
+				}
+			}
+
+			collect_overlapTiles[count] = nowHeightTile;
+			collect_overlapMasks[count] = map;
+			count++;
+
+			// reset
+			lastHeight = nowHeight;
+		}
+		return count;
+	}
+
+	/**
+	 * Compute how the tile at given position is drawn, packed into a long, which is never 0.
+	 * Lowest 8 bits are the base texture variant, next 3 bits the amount of overlaps,
+	 * with all bits set when there are too many overlaps to pack. Bit 15 is always set.
+	 * Overlaps are packed from bit 16, each in 16 bits: lower 8 bits are the overlap mask,
+	 * upper 8 bits are the {@link Id.Registry#denseIndex(Id)} of the overlapping tile.
+	 */
+	static long computeLayout(@NotNull final WorldAttribute<Tile> t, final int x, final int y) {
+		final Tile tile = t.get(x, y);
+		long layout = LAYOUT_COMPUTED | ((murmurHash3(x, y) % tile.baseVariants) & 0xFF);
+
+		final int count = collectOverlaps(t, x, y);
+		if (count > LAYOUT_MAX_OVERLAPS) {
+			return layout | ((long) LAYOUT_OVERFLOW << LAYOUT_COUNT_SHIFT);
+		}
+		for (int i = 0; i < count; i++) {
+			final int denseIndex = REGISTRY.denseIndex(collect_overlapTiles[i]);
+			if (denseIndex > 0xFF) {
+				return layout | ((long) LAYOUT_OVERFLOW << LAYOUT_COUNT_SHIFT);
+			}
+			final long overlap = (denseIndex << 8) | (collect_overlapMasks[i] & 0xFF);
+			layout |= overlap << (LAYOUT_OVERLAP_SHIFT + i * 16);
+		}
+		return layout | ((long) count << LAYOUT_COUNT_SHIFT);
+	}
+
+	public static void drawTiles(@NotNull final TileOverlapGrid grid, @NotNull final Batch b, final int startX, final int startY, final int endX, final int endY) {
+		drawTiles(grid, b::draw, startX, startY, endX, endY);
+	}
+
+	/** Draw tiles in the given inclusive range into a {@link caravan.util.RenderUtil.VertexSink}. */
+	public static void drawTiles(@NotNull final TileOverlapGrid grid, @NotNull final RenderUtil.VertexSink b, final int startX, final int startY, final int endX, final int endY) {
+		final WorldAttribute<Tile> t = grid.tiles;
+		final int[] overlaps = drawTiles_overlaps;
+		final int[] images = drawTiles_images;
 		//Draw tiles & overlaps
-		final Tile[] tiles = draw_collisionTiles;
 		for (int y = endY; y >= startY; y--) {
 			for (int x = startX; x <= endX; x++) {
 				final Tile tile = t.get(x, y);
+				final long layout = grid.layout(x, y);
 
-				final int tileHash = murmurHash3(x, y);
-
-				final TextureRegion base = tile.base[tileHash % tile.base.length];
+				final TextureRegion base = tile.base[layoutBaseVariant(layout)];
 				if (base != null) {
 					RenderUtil.drawTile(b, base, x, y);
 				}
 
-				tiles[0] = t.get(x+1,y-1); //BOTTOM_RIGHT
-				tiles[1] = t.get(x-1,y-1); //BOTTOM_LEFT
-				tiles[2] = t.get(x+1,y+1); //TOP_RIGHT
-				tiles[3] = t.get(x-1,y+1); //TOP_LEFT
-				tiles[4] = t.get(x,y-1); //BOTTOM
-				tiles[5] = t.get(x+1,y); //RIGHT
-				tiles[6] = t.get(x-1,y); //LEFT
-				tiles[7] = t.get(x,y+1); //TOP
-
-				byte lastHeight = tile.height;
-				while (true) {
-					// Looking for lowest tile that is higher than us/last overlap
-					byte nowHeight = Byte.MAX_VALUE;
-					Tile nowHeightTile = null;
-					for (Tile neighborTile : tiles) {
-						if (neighborTile.height > lastHeight && neighborTile.height < nowHeight && neighborTile.overlaps != null) {
-							nowHeight = neighborTile.height;
-							nowHeightTile = neighborTile;
-						}
-					}
-					if (nowHeightTile == null) break;
-
-					// Draw overlap
-					byte map = 0;
-					for (int i = 0; i < 8; i++) {
-						if(tiles[i].height == nowHeight){
-							map |= 1 << i;
-						}
+				final int count = layoutOverlaps(grid, x, y, layout, overlaps);
+				for (int i = 0; i < count; i++) {
+					final int overlap = overlaps[i];
+					final TextureAtlas.AtlasRegion[] overlapRegions = REGISTRY.getDense(overlap >>> 8).overlaps;
+					final int imageCount = overlapImages((byte) overlap, images);
+					for (int image = 0; image < imageCount; image++) {
+						drawTile(b, overlapRegions[images[image]], x, y);
 					}
+				}
+			}
+		}
+	}
 
-					drawTileOverlaps(b, nowHeightTile.overlaps, x, y, map);
+	/** @return base texture variant of a layout from {@link #computeLayout(WorldAttribute, int, int)} */
+	static int layoutBaseVariant(long layout) {
+		return (int) (layout & 0xFF);
+	}
 
-					// reset
-					lastHeight = nowHeight;
-				}
+	/**
+	 * Unpack the overlaps of a layout from {@link #computeLayout(WorldAttribute, int, int)},
+	 * collecting them again if there were too many to pack.
+	 * @param out at least 8 long, overlaps from the bottom one, each with the overlap mask in lower 8 bits
+	 * and the {@link Id.Registry#denseIndex(Id)} of the overlapping tile above that
+	 * @return amount of overlaps
+	 */
+	static int layoutOverlaps(@NotNull TileOverlapGrid grid, int x, int y, long layout, int @NotNull [] out) {
+		final int count = (int) (layout >>> LAYOUT_COUNT_SHIFT) & LAYOUT_OVERFLOW;
+		if (count == LAYOUT_OVERFLOW) {
+			// Rare, not worth caching
+			final int overlapCount = collectOverlaps(grid.tiles, x, y);
+			for (int i = 0; i < overlapCount; i++) {
+				out[i] = (REGISTRY.denseIndex(collect_overlapTiles[i]) << 8) | (collect_overlapMasks[i] & 0xFF);
 			}
+			return overlapCount;
+		}
+		for (int i = 0; i < count; i++) {
+			out[i] = (int) (layout >>> (LAYOUT_OVERLAP_SHIFT + i * 16)) & 0xFFFF;
 		}
+		return count;
+	}
+
+	/** @return amount of base texture variants */
+	int baseVariants() {
+		return baseVariants;
+	}
+
+	/** @return base texture of given variant, if loaded and found */
+	@Nullable TextureRegion baseRegion(int variant) {
+		return base == null ? null : base[variant];
+	}
+
+	/** @return overlap image with given index (see {@link #overlapImages(byte, int[])}), if loaded and found */
+	@Nullable TextureAtlas.AtlasRegion overlapRegion(int image) {
+		return overlaps == null || overlaps.length == 0 ? null : overlaps[image];
 	}
 
 	//region Overlap image indices
@@ -185,20 +299,24 @@ public final class Tile extends Id<Tile> {
 	private static final int U_B = 15; //U-shape bottom
 
 	private static final int O = 16;//O-shape, all edges and corners combined
-	private static final int OVERLAP_IMAGE_COUNT = 17;
+	static final int OVERLAP_IMAGE_COUNT = 17;
 	//endregion
 
+	/** Most overlap images that {@link #overlapImages(byte, int[])} may return. */
+	static final int MAX_OVERLAP_IMAGES = 4;
+
+	private static final int[] drawTiles_overlaps = new int[8];
+	private static final int[] drawTiles_images = new int[MAX_OVERLAP_IMAGES];
+
 	/**
 	 * Note: in overlapMask, when edge bit is set, both neighboring corner bits will be set as well
-	 * <p>
-	 * Won't get called if overlapMask is 0.
 	 *
-	 * @param batch to which render
-	 * @param x of lower left corner
-	 * @param y of lower left corner
-	 * @param overlapMask marks which parts of tile are overlapped into
+	 * @param overlapMask marks which parts of tile are overlapped into, not 0
+	 * @param out at least {@link #MAX_OVERLAP_IMAGES} long, receives indices of overlap images to draw, in order
+	 * @return amount of overlap images to draw
 	 */
-	private static void drawTileOverlaps(@NotNull Batch batch, @Nullable final TextureAtlas.AtlasRegion @NotNull[] overlaps, int x, int y, byte overlapMask) {
+	static int overlapImages(byte overlapMask, int @NotNull [] out) {
+		int count = 0;
 		byte cornerMask = 0;
 		switch (overlapMask & EDGE_MASK) {
 			case 0:
@@ -207,79 +325,79 @@ public final class Tile extends Id<Tile> {
 				break;
 			//Edges
 			case TOP:
-				drawTile(batch, overlaps[E_T], x, y);
+				out[count++] = E_T;
 				cornerMask = BOTTOM_LEFT | BOTTOM_RIGHT;
 				break;
 			case LEFT:
-				drawTile(batch, overlaps[E_L], x, y);
+				out[count++] = E_L;
 				cornerMask = TOP_RIGHT | BOTTOM_RIGHT;
 				break;
 			case RIGHT:
-				drawTile(batch, overlaps[E_R], x, y);
+				out[count++] = E_R;
 				cornerMask = BOTTOM_LEFT | TOP_LEFT;
 				break;
 			case BOTTOM:
-				drawTile(batch, overlaps[E_B], x, y);
+				out[count++] = E_B;
 				cornerMask = TOP_LEFT | TOP_RIGHT;
 				break;
 			//Double edges
 			case TOP | BOTTOM:
-				drawTile(batch, overlaps[E_T], x, y);
-				drawTile(batch, overlaps[E_B], x, y);
+				out[count++] = E_T;
+				out[count++] = E_B;
 				break;
 			case LEFT | RIGHT:
-				drawTile(batch, overlaps[E_L], x, y);
-				drawTile(batch, overlaps[E_R], x, y);
+				out[count++] = E_L;
+				out[count++] = E_R;
 				break;
 			//Insides
 			case TOP | LEFT:
-				drawTile(batch, overlaps[I_TL], x, y);
+				out[count++] = I_TL;
 				cornerMask = BOTTOM_RIGHT;
 				break;
 			case TOP | RIGHT:
-				drawTile(batch, overlaps[I_TR], x, y);
+				out[count++] = I_TR;
 				cornerMask = BOTTOM_LEFT;
 				break;
 			case BOTTOM | LEFT:
-				drawTile(batch, overlaps[I_BL], x, y);
+				out[count++] = I_BL;
 				cornerMask = TOP_RIGHT;
 				break;
 			case BOTTOM | RIGHT:
-				drawTile(batch, overlaps[I_BR], x, y);
+				out[count++] = I_BR;
 				cornerMask = TOP_LEFT;
 				break;
 			//U-shapes
 			case LEFT | TOP | RIGHT:
-				drawTile(batch, overlaps[U_T], x, y);
-				return;
+				out[count++] = U_T;
+				return count;
 			case TOP | RIGHT | BOTTOM:
-				drawTile(batch, overlaps[U_R], x, y);
-				return;
+				out[count++] = U_R;
+				return count;
 			case RIGHT | BOTTOM | LEFT:
-				drawTile(batch, overlaps[U_B], x, y);
-				return;
+				out[count++] = U_B;
+				return count;
 			case BOTTOM | LEFT | TOP:
-				drawTile(batch, overlaps[U_L], x, y);
-				return;
+				out[count++] = U_L;
+				return count;
 			//O-shape
 			case TOP | LEFT | BOTTOM | RIGHT:
-				drawTile(batch, overlaps[O], x, y);
-				return;
+				out[count++] = O;
+				return count;
 		}
 		//Render corners
 		final byte corners = (byte) (overlapMask & cornerMask);
-		if (corners == 0) return;
 		if ((corners & TOP_LEFT) != 0) {
-			drawTile(batch, overlaps[C_TL], x, y);
+			out[count++] = C_TL;
 		}
 		if ((corners & TOP_RIGHT) != 0) {
-			drawTile(batch, overlaps[C_TR], x, y);
+			out[count++] = C_TR;
 		}
 		if ((corners & BOTTOM_LEFT) != 0) {
-			drawTile(batch, overlaps[C_BL], x, y);
+			out[count++] = C_BL;
 		}
 		if ((corners & BOTTOM_RIGHT) != 0) {
-			drawTile(batch, overlaps[C_BR], x, y);
+			out[count++] = C_BR;
 		}
+		return count;
 	}
 }
@@ -0,0 +1,199 @@
+package caravan.world;
+
+import caravan.util.RenderUtil;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Renders tiles from static meshes, one per square chunk of tiles, which are built from {@link Tile#drawTiles}
+ * the first time the chunk is visible and rebuilt only after a tile in it (or next to it) changes.
+ */
+public final class TileChunkCache implements Disposable {
+
+	/** Side of a chunk, in tiles. */
+	public static final int CHUNK_SIZE = 16;
+	/** Most sprites that a single chunk mesh can have, limited by short indices. */
+	private static final int MAX_CHUNK_SPRITES = 8191;
+
+	private final IntMap<Chunk> chunks = new IntMap<>();
+	private final ShaderProgram shader;
+	private final short[] indices;
+	private final Matrix4 combined = new Matrix4();
+
+	/** Vertices of the chunk that is being built, in submission order,
+	 * split into runs of the same texture, like a batch would flush them on a texture switch. */
+	private final FloatArray build_vertices = new FloatArray(CHUNK_SIZE * CHUNK_SIZE * 20 * 2);
+	private final Array<Texture> build_runTextures = new Array<>(Texture.class);
+	private final IntArray build_runOffsets = new IntArray();
+	private final RenderUtil.VertexSink build_sink = (texture, vertices, offset, count) -> {
+		final Array<Texture> runTextures = build_runTextures;
+		if (runTextures.size == 0 || runTextures.peek() != texture) {
+			runTextures.add(texture);
+			build_runOffsets.add(build_vertices.size / 20);
+		}
+		build_vertices.addAll(vertices, offset, count);
+	};
+
+	public TileChunkCache() {
+		shader = SpriteBatch.createDefaultShader();
+		indices = new short[MAX_CHUNK_SPRITES * 6];
+		for (int i = 0, v = 0; i < indices.length; i += 6, v += 4) {
+			indices[i] = (short) v;
+			indices[i + 1] = (short) (v + 1);
+			indices[i + 2] = (short) (v + 2);
+			indices[i + 3] = (short) (v + 2);
+			indices[i + 4] = (short) (v + 3);
+			indices[i + 5] = (short) v;
+		}
+	}
+
+	private static int chunkKey(int chunkX, int chunkY) {
+		return (chunkX & 0xFFFF) | (chunkY << 16);
+	}
+
+	private static int chunkCoordinate(int tileCoordinate) {
+		return Math.floorDiv(tileCoordinate, CHUNK_SIZE);
+	}
+
+	/** Notify the cache that the tile at given position has changed. */
+	public void invalidate(int x, int y) {
+		// Overlaps of the neighbors depend on the tile as well
+		for (int chunkY = chunkCoordinate(y - 1); chunkY <= chunkCoordinate(y + 1); chunkY++) {
+			for (int chunkX = chunkCoordinate(x - 1); chunkX <= chunkCoordinate(x + 1); chunkX++) {
+				final Chunk chunk = chunks.get(chunkKey(chunkX, chunkY));
+				if (chunk != null) {
+					chunk.dirty = true;
+				}
+			}
+		}
+	}
+
+	/** Notify the cache that any tile may have changed. */
+	public void invalidateAll() {
+		for (Chunk chunk : chunks.values()) {
+			chunk.dirty = true;
+		}
+	}
+
+	/** Draw tiles in the given inclusive range, possibly a bit more. Batch must not be drawing. */
+	public void render(@NotNull TileOverlapGrid tiles, @NotNull Batch batch, int startX, int startY, int endX, int endY) {
+		combined.set(batch.getProjectionMatrix()).mul(batch.getTransformMatrix());
+
+		final ShaderProgram shader = this.shader;
+		Gdx.gl.glEnable(GL20.GL_BLEND);
+		Gdx.gl.glBlendFunc(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+		shader.bind();
+		shader.setUniformMatrix("u_projTrans", combined);
+		shader.setUniformi("u_texture", 0);
+
+		final int chunkX0 = chunkCoordinate(startX), chunkX1 = chunkCoordinate(endX);
+		final int chunkY0 = chunkCoordinate(startY), chunkY1 = chunkCoordinate(endY);
+		for (int chunkY = chunkY1; chunkY >= chunkY0; chunkY--) {
+			for (int chunkX = chunkX0; chunkX <= chunkX1; chunkX++) {
+				final int key = chunkKey(chunkX, chunkY);
+				Chunk chunk = chunks.get(key);
+				if (chunk == null) {
+					chunk = new Chunk();
+					chunks.put(key, chunk);
+				}
+				if (chunk.dirty) {
+					build(chunk, tiles, chunkX * CHUNK_SIZE, chunkY * CHUNK_SIZE);
+				}
+
+				final Mesh mesh = chunk.mesh;
+				if (mesh == null) {
+					// Too many sprites for a mesh, draw directly
+					batch.begin();
+					Tile.drawTiles(tiles, batch, chunkX * CHUNK_SIZE, chunkY * CHUNK_SIZE, chunkX * CHUNK_SIZE + CHUNK_SIZE - 1, chunkY * CHUNK_SIZE + CHUNK_SIZE - 1);
+					batch.end();
+					// The batch has bound its own shader and disabled blending
+					Gdx.gl.glEnable(GL20.GL_BLEND);
+					Gdx.gl.glBlendFunc(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+					shader.bind();
+					shader.setUniformMatrix("u_projTrans", combined);
+					shader.setUniformi("u_texture", 0);
+					continue;
+				}
+
+				final Texture[] textures = chunk.textures;
+				final int[] spriteOffsets = chunk.spriteOffsets;
+				for (int i = 0; i < textures.length; i++) {
+					textures[i].bind(0);
+					mesh.render(shader, GL20.GL_TRIANGLES, spriteOffsets[i] * 6, (spriteOffsets[i + 1] - spriteOffsets[i]) * 6);
+				}
+			}
+		}
+	}
+
+	private void build(@NotNull Chunk chunk, @NotNull TileOverlapGrid tiles, int x, int y) {
+		chunk.dirty = false;
+		if (chunk.mesh != null) {
+			chunk.mesh.dispose();
+			chunk.mesh = null;
+		}
+
+		final FloatArray vertices = this.build_vertices;
+		final Array<Texture> runTextures = this.build_runTextures;
+		final IntArray runOffsets = this.build_runOffsets;
+		vertices.clear();
+		runTextures.clear();
+		runOffsets.clear();
+		Tile.drawTiles(tiles, build_sink, x, y, x + CHUNK_SIZE - 1, y + CHUNK_SIZE - 1);
+
+		final int sprites = vertices.size / 20;
+		if (sprites > MAX_CHUNK_SPRITES) {
+			chunk.textures = new Texture[0];
+			return;
+		}
+
+		final int[] spriteOffsets = new int[runTextures.size + 1];
+		System.arraycopy(runOffsets.items, 0, spriteOffsets, 0, runOffsets.size);
+		spriteOffsets[runTextures.size] = sprites;
+
+		final Mesh mesh = new Mesh(true, sprites * 4, sprites * 6, new VertexAttributes(
+				new VertexAttribute(VertexAttributes.Usage.Position, 2, ShaderProgram.POSITION_ATTRIBUTE),
+				new VertexAttribute(VertexAttributes.Usage.ColorPacked, 4, ShaderProgram.COLOR_ATTRIBUTE),
+				new VertexAttribute(VertexAttributes.Usage.TextureCoordinates, 2, ShaderProgram.TEXCOORD_ATTRIBUTE + "0")));
+		mesh.setVertices(vertices.items, 0, vertices.size);
+		mesh.setIndices(indices, 0, sprites * 6);
+		chunk.mesh = mesh;
+		chunk.textures = runTextures.toArray();
+		chunk.spriteOffsets = spriteOffsets;
+	}
+
+	@Override
+	public void dispose() {
+		for (Chunk chunk : chunks.values()) {
+			if (chunk.mesh != null) {
+				chunk.mesh.dispose();
+			}
+		}
+		chunks.clear();
+		shader.dispose();
+	}
+
+	private static final class Chunk {
+		boolean dirty = true;
+		/** Null if the chunk is not built or when it has too many sprites. */
+		@Nullable Mesh mesh;
+		/** Texture of each run of sprites, in draw order. The same texture may have more runs, so that overlaps stay above the tiles. */
+		Texture @NotNull [] textures = new Texture[0];
+		/** Index of first sprite of each run, followed by the sprite count. */
+		int @NotNull [] spriteOffsets = new int[1];
+	}
+}
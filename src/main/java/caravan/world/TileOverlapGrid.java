@@ -0,0 +1,54 @@
+package caravan.world;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Remembers for each tile of the world how it is drawn: which base texture variant it uses and which overlaps are drawn over it.
+ * Layouts are computed by {@link Tile#computeLayout(WorldAttribute, int, int)} the first time they are needed
+ * and kept until a tile in their neighborhood changes.
+ */
+public final class TileOverlapGrid {
+
+	public final @NotNull WorldAttribute<Tile> tiles;
+	/** Layout of each tile, same indexing as {@link WorldAttribute#values}, 0 if not computed yet. */
+	private final long @NotNull [] layouts;
+
+	public TileOverlapGrid(@NotNull WorldAttribute<Tile> tiles) {
+		this.tiles = tiles;
+		this.layouts = new long[tiles.width * tiles.height];
+	}
+
+	/** @return layout of the tile at given position, as described in {@link Tile#computeLayout(WorldAttribute, int, int)} */
+	public long layout(int x, int y) {
+		final WorldAttribute<Tile> tiles = this.tiles;
+		if (x < 0 || x >= tiles.width || y < 0 || y >= tiles.height) {
+			return Tile.computeLayout(tiles, x, y);
+		}
+		final int index = x + y * tiles.width;
+		long layout = layouts[index];
+		if (layout == 0L) {
+			layouts[index] = layout = Tile.computeLayout(tiles, x, y);
+		}
+		return layout;
+	}
+
+	/** Notify that the tile at given position has changed. */
+	public void invalidate(int x, int y) {
+		final WorldAttribute<Tile> tiles = this.tiles;
+		// Overlaps of the neighbors depend on the tile as well
+		final int x0 = Math.max(x - 1, 0), x1 = Math.min(x + 1, tiles.width - 1);
+		final int y0 = Math.max(y - 1, 0), y1 = Math.min(y + 1, tiles.height - 1);
+		for (int ny = y0; ny <= y1; ny++) {
+			for (int nx = x0; nx <= x1; nx++) {
+				layouts[nx + ny * tiles.width] = 0L;
+			}
+		}
+	}
+
+	/** Notify that any tile may have changed. */
+	public void invalidateAll() {
+		Arrays.fill(layouts, 0L);
+	}
+}
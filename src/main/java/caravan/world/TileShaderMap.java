@@ -0,0 +1,478 @@
+package caravan.world;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.BufferUtils;
+import com.badlogic.gdx.utils.Disposable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Renders tiles with a fragment shader, which looks up how each tile is drawn in textures,
+ * so the whole visible map is a single quad, regardless of how many tiles are visible.
+ *
+ * The layout of each tile from {@link TileOverlapGrid} is stored in {@link #LAYOUT_TEXELS} RGBA8 texels of the layout texture
+ * (GL 2.0 has no integer textures), with a border of {@link #BORDER} tiles around the world.
+ * The shader then finds the atlas regions of the base texture and overlaps in a region table texture
+ * and which overlap images belong to an overlap mask in a mask table texture, both built from {@link Tile} once.
+ * Changed tiles only re-upload the texels of their neighborhood.
+ * The atlas is sampled without mip maps while drawing, because the texture coordinates jump between neighboring pixels.
+ */
+public final class TileShaderMap implements Disposable {
+
+	/** Tiles around the world which are stored in the layout texture, so that overlaps over the world edge are drawn. */
+	private static final int BORDER = 1;
+	/** Texels of a tile in the layout texture. */
+	private static final int LAYOUT_TEXELS = 3;
+	/** How many overlaps fit into the layout texels, the first texel also holds the base texture. */
+	private static final int MAX_OVERLAPS = LAYOUT_TEXELS * 2 - 1;
+	/** Texels of each image in the region table texture: atlas coordinates and placement in the tile, 16 bits per value. */
+	private static final int REGION_TEXELS = 4;
+	/** Value in the mask table, which means no image. */
+	private static final int NO_IMAGE = 0xFF;
+
+	private static final String VERTEX_SHADER = "" +
+			"attribute vec4 " + ShaderProgram.POSITION_ATTRIBUTE + ";\n" +
+			"uniform mat4 u_projTrans;\n" +
+			"varying vec2 v_world;\n" +
+			"void main() {\n" +
+			"	v_world = " + ShaderProgram.POSITION_ATTRIBUTE + ".xy;\n" +
+			"	gl_Position = u_projTrans * " + ShaderProgram.POSITION_ATTRIBUTE + ";\n" +
+			"}\n";
+
+	private static final String FRAGMENT_SHADER = "" +
+			"#ifdef GL_ES\n" +
+			"#ifdef GL_FRAGMENT_PRECISION_HIGH\n" +
+			"precision highp float;\n" +
+			"#else\n" +
+			"precision mediump float;\n" +
+			"#endif\n" +
+			"#endif\n" +
+			"varying vec2 v_world;\n" +
+			"uniform sampler2D u_atlas;\n" +
+			"uniform sampler2D u_layout;\n" +
+			"uniform sampler2D u_regions;\n" +
+			"uniform sampler2D u_masks;\n" +
+			// Tiles in the layout texture and world position of the first one
+			"uniform vec2 u_layoutSize;\n" +
+			"uniform vec2 u_layoutOrigin;\n" +
+			// First layout texel of tiles outside of the layout texture
+			"uniform vec4 u_defaultLayout;\n" +
+			// Images of each tile in the region table, index of the first overlap image and amount of tiles
+			"uniform float u_imageCount;\n" +
+			"uniform float u_overlapImageOffset;\n" +
+			"uniform float u_tileCount;\n" +
+			// Half of an atlas texel, in texture coordinates
+			"uniform vec2 u_atlasHalfTexel;\n" +
+
+			"float unpack16(vec2 highLow) {\n" +
+			"	return (highLow.x * 65280.0 + highLow.y * 255.0) / 65535.0;\n" +
+			"}\n" +
+
+			"vec4 regionTexel(float tile, float image, float texel) {\n" +
+			"	return texture2D(u_regions, vec2((image * " + REGION_TEXELS + ".0 + texel + 0.5) / (u_imageCount * " + REGION_TEXELS + ".0), (tile + 0.5) / u_tileCount));\n" +
+			"}\n" +
+
+			// All fetches are unconditional and masked afterwards, so that the lookups don't depend on branches
+			"vec4 sampleImage(float tile, float image, vec2 local) {\n" +
+			"	vec4 place0 = regionTexel(tile, image, 2.0);\n" +
+			"	vec4 place1 = regionTexel(tile, image, 3.0);\n" +
+			"	vec4 uv0 = regionTexel(tile, image, 0.0);\n" +
+			"	vec4 uv1 = regionTexel(tile, image, 1.0);\n" +
+			"	vec2 from = vec2(unpack16(place0.rg), unpack16(place0.ba));\n" +
+			"	vec2 to = vec2(unpack16(place1.rg), unpack16(place1.ba));\n" +
+			"	vec2 uvFrom = vec2(unpack16(uv0.rg), unpack16(uv0.ba));\n" +
+			"	vec2 uvTo = vec2(unpack16(uv1.rg), unpack16(uv1.ba));\n" +
+			"	vec2 inside2 = step(from, local) * step(local, to);\n" +
+			"	vec2 t = clamp((local - from) / max(to - from, vec2(1.0 / 65535.0)), 0.0, 1.0);\n" +
+			// Don't let linear filtering reach the neighbor regions of the atlas
+			"	vec2 uv = clamp(mix(uvFrom, uvTo, t), min(uvFrom, uvTo) + u_atlasHalfTexel, max(uvFrom, uvTo) - u_atlasHalfTexel);\n" +
+			"	return texture2D(u_atlas, uv) * (inside2.x * inside2.y);\n" +
+			"}\n" +
+
+			"vec4 blend(vec4 color, vec4 over) {\n" +
+			"	return vec4(mix(color.rgb, over.rgb, over.a), over.a + color.a * (1.0 - over.a));\n" +
+			"}\n" +
+
+			"vec4 overlapImage(vec4 color, float tile, float image, vec2 local) {\n" +
+			"	float present = step(image, " + (NO_IMAGE - 1) + ".5);\n" +
+			"	return blend(color, sampleImage(tile, u_overlapImageOffset + image, local) * present);\n" +
+			"}\n" +
+
+			// Empty mask has no images in the mask table
+			"vec4 overlap(vec4 color, float tile, float mask, vec2 local) {\n" +
+			"	vec4 images = floor(texture2D(u_masks, vec2((mask + 0.5) / 256.0, 0.5)) * 255.0 + 0.5);\n" +
+			"	color = overlapImage(color, tile, images.r, local);\n" +
+			"	color = overlapImage(color, tile, images.g, local);\n" +
+			"	color = overlapImage(color, tile, images.b, local);\n" +
+			"	return overlapImage(color, tile, images.a, local);\n" +
+			"}\n" +
+
+			"void main() {\n" +
+			"	vec2 tilePosition = floor(v_world);\n" +
+			"	vec2 local = v_world - tilePosition;\n" +
+			"	vec2 cell = tilePosition - u_layoutOrigin;\n" +
+			"	vec2 inside2 = step(vec2(0.0), cell) * step(cell, u_layoutSize - 1.0);\n" +
+			"	float inside = inside2.x * inside2.y;\n" +
+			"	cell = clamp(cell, vec2(0.0), u_layoutSize - 1.0);\n" +
+			"	float layoutWidth = u_layoutSize.x * " + LAYOUT_TEXELS + ".0;\n" +
+			"	float v = (cell.y + 0.5) / u_layoutSize.y;\n" +
+			"	float u = cell.x * " + LAYOUT_TEXELS + ".0 + 0.5;\n" +
+			"	vec4 l0 = floor(texture2D(u_layout, vec2(u / layoutWidth, v)) * 255.0 + 0.5);\n" +
+			"	vec4 l1 = floor(texture2D(u_layout, vec2((u + 1.0) / layoutWidth, v)) * 255.0 + 0.5);\n" +
+			"	vec4 l2 = floor(texture2D(u_layout, vec2((u + 2.0) / layoutWidth, v)) * 255.0 + 0.5);\n" +
+			"	l0 = mix(u_defaultLayout, l0, inside);\n" +
+			"	l1 *= inside;\n" +
+			"	l2 *= inside;\n" +
+			"	vec4 color = sampleImage(l0.r, l0.g, local);\n" +
+			"	color = overlap(color, l0.b, l0.a, local);\n" +
+			"	color = overlap(color, l1.r, l1.g, local);\n" +
+			"	color = overlap(color, l1.b, l1.a, local);\n" +
+			"	color = overlap(color, l2.r, l2.g, local);\n" +
+			"	gl_FragColor = overlap(color, l2.b, l2.a, local);\n" +
+			"}\n";
+
+	private final @NotNull ShaderProgram shader;
+	private final @NotNull Mesh quad;
+	private final float[] quadVertices = new float[8];
+	private final Matrix4 combined = new Matrix4();
+
+	/** Texture of the atlas page with all tile images. */
+	private final @NotNull Texture atlas;
+	private final @NotNull Texture regionTable;
+	private final @NotNull Texture maskTable;
+	private final int imageCount;
+	private final int overlapImageOffset;
+	private final int tileCount;
+
+	private @Nullable Texture layoutTexture;
+	/** Size of the world, which the layout texture is for. */
+	private int worldWidth, worldHeight;
+
+	/** Region of tiles whose layout has to be uploaded, inclusive, empty when min > max. */
+	private int dirtyMinX, dirtyMinY, dirtyMaxX, dirtyMaxY;
+
+	private @NotNull ByteBuffer upload_texels = BufferUtils.newByteBuffer(LAYOUT_TEXELS * 4 * 9);
+	private final int[] upload_overlaps = new int[8];
+
+	private TileShaderMap(@NotNull ShaderProgram shader, @NotNull Texture atlas, int maxBaseVariants) {
+		this.shader = shader;
+		this.atlas = atlas;
+		this.overlapImageOffset = maxBaseVariants;
+		this.imageCount = maxBaseVariants + Tile.OVERLAP_IMAGE_COUNT;
+		this.tileCount = Tile.REGISTRY.count();
+		this.regionTable = createRegionTable();
+		this.maskTable = createMaskTable();
+		this.quad = new Mesh(false, 4, 6, new VertexAttribute(VertexAttributes.Usage.Position, 2, ShaderProgram.POSITION_ATTRIBUTE));
+		quad.setIndices(new short[] {0, 1, 2, 2, 3, 0});
+		clearDirty();
+	}
+
+	/**
+	 * Create the renderer for the loaded tiles.
+	 * @return null when the tiles can't be rendered like this, because their images are not all in a single texture,
+	 * or when the shader does not compile
+	 */
+	public static @Nullable TileShaderMap create() {
+		Texture atlas = null;
+		int maxBaseVariants = 0;
+		for (Tile tile : Tile.REGISTRY) {
+			maxBaseVariants = Math.max(maxBaseVariants, tile.baseVariants());
+			for (int i = 0; i < tile.baseVariants(); i++) {
+				final TextureRegion region = tile.baseRegion(i);
+				if (region == null) continue;
+				if (atlas != null && atlas != region.getTexture()) return null;
+				atlas = region.getTexture();
+			}
+			for (int i = 0; i < Tile.OVERLAP_IMAGE_COUNT; i++) {
+				final TextureAtlas.AtlasRegion region = tile.overlapRegion(i);
+				if (region == null) continue;
+				if (atlas != null && atlas != region.getTexture()) return null;
+				atlas = region.getTexture();
+			}
+		}
+		if (atlas == null || Tile.REGISTRY.count() > 0xFF || maxBaseVariants > 0xFF) {
+			return null;
+		}
+
+		final ShaderProgram shader = new ShaderProgram(VERTEX_SHADER, FRAGMENT_SHADER);
+		if (!shader.isCompiled()) {
+			Gdx.app.error("TileShaderMap", "Failed to compile the tile shader: " + shader.getLog());
+			shader.dispose();
+			return null;
+		}
+		return new TileShaderMap(shader, atlas, maxBaseVariants);
+	}
+
+	private void clearDirty() {
+		dirtyMinX = dirtyMinY = Integer.MAX_VALUE;
+		dirtyMaxX = dirtyMaxY = Integer.MIN_VALUE;
+	}
+
+	/** Notify that the tile at given position has changed. */
+	public void invalidate(int x, int y) {
+		// Overlaps of the neighbors depend on the tile as well
+		dirtyMinX = Math.min(dirtyMinX, x - 1);
+		dirtyMinY = Math.min(dirtyMinY, y - 1);
+		dirtyMaxX = Math.max(dirtyMaxX, x + 1);
+		dirtyMaxY = Math.max(dirtyMaxY, y + 1);
+	}
+
+	/** Notify that any tile may have changed. */
+	public void invalidateAll() {
+		dirtyMinX = dirtyMinY = Integer.MIN_VALUE / 2;
+		dirtyMaxX = dirtyMaxY = Integer.MAX_VALUE / 2;
+	}
+
+	/**
+	 * Draw tiles in the given inclusive range. Batch must not be drawing.
+	 * @return false if nothing was drawn, because the world does not fit into a texture
+	 */
+	public boolean render(@NotNull TileOverlapGrid tiles, @NotNull Batch batch, int startX, int startY, int endX, int endY) {
+		if (layoutTexture == null || worldWidth != tiles.tiles.width || worldHeight != tiles.tiles.height) {
+			if (!createLayoutTexture(tiles.tiles.width, tiles.tiles.height)) {
+				return false;
+			}
+		}
+		final Texture layoutTexture = this.layoutTexture;
+		if (dirtyMinX <= dirtyMaxX) {
+			upload(tiles, layoutTexture);
+		}
+
+		final float[] vertices = this.quadVertices;
+		vertices[0] = startX;
+		vertices[1] = startY;
+		vertices[2] = startX;
+		vertices[3] = endY + 1;
+		vertices[4] = endX + 1;
+		vertices[5] = endY + 1;
+		vertices[6] = endX + 1;
+		vertices[7] = startY;
+		quad.setVertices(vertices);
+
+		maskTable.bind(3);
+		regionTable.bind(2);
+		layoutTexture.bind(1);
+		atlas.bind(0);
+		// Neighboring pixels can be from different tiles or images, so mip level selection would be nonsense on their edges
+		final Texture.TextureFilter minFilter = atlas.getMinFilter();
+		final Texture.TextureFilter magFilter = atlas.getMagFilter();
+		if (minFilter.isMipMap()) {
+			atlas.setFilter(withoutMipMaps(minFilter), magFilter);
+		}
+
+		final Tile defaultTile = tiles.tiles.defaultValue;
+		final ShaderProgram shader = this.shader;
+		Gdx.gl.glEnable(GL20.GL_BLEND);
+		Gdx.gl.glBlendFunc(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+		shader.bind();
+		shader.setUniformMatrix("u_projTrans", combined.set(batch.getProjectionMatrix()).mul(batch.getTransformMatrix()));
+		shader.setUniformi("u_atlas", 0);
+		shader.setUniformi("u_layout", 1);
+		shader.setUniformi("u_regions", 2);
+		shader.setUniformi("u_masks", 3);
+		shader.setUniformf("u_layoutSize", worldWidth + BORDER * 2, worldHeight + BORDER * 2);
+		shader.setUniformf("u_layoutOrigin", -BORDER, -BORDER);
+		// Far from the world, there is only the default tile in its first variant
+		shader.setUniformf("u_defaultLayout", Tile.REGISTRY.denseIndex(defaultTile), 0f, 0f, 0f);
+		shader.setUniformf("u_imageCount", imageCount);
+		shader.setUniformf("u_overlapImageOffset", overlapImageOffset);
+		shader.setUniformf("u_tileCount", tileCount);
+		shader.setUniformf("u_atlasHalfTexel", 0.5f / atlas.getWidth(), 0.5f / atlas.getHeight());
+		quad.render(shader, GL20.GL_TRIANGLES);
+
+		if (minFilter.isMipMap()) {
+			atlas.bind(0);
+			atlas.setFilter(minFilter, magFilter);
+		}
+		return true;
+	}
+
+	/** @return filter which samples like the given one within a single mip level */
+	private static @NotNull Texture.TextureFilter withoutMipMaps(@NotNull Texture.TextureFilter filter) {
+		switch (filter) {
+			case MipMapNearestNearest:
+			case MipMapNearestLinear:
+				return Texture.TextureFilter.Nearest;
+			default:
+				return Texture.TextureFilter.Linear;
+		}
+	}
+
+	private boolean createLayoutTexture(int worldWidth, int worldHeight) {
+		if (layoutTexture != null) {
+			layoutTexture.dispose();
+			layoutTexture = null;
+		}
+		final int textureWidth = (worldWidth + BORDER * 2) * LAYOUT_TEXELS;
+		final int textureHeight = worldHeight + BORDER * 2;
+		final IntBuffer maxSize = BufferUtils.newIntBuffer(16);
+		Gdx.gl.glGetIntegerv(GL20.GL_MAX_TEXTURE_SIZE, maxSize);
+		if (textureWidth > maxSize.get(0) || textureHeight > maxSize.get(0)) {
+			return false;
+		}
+
+		this.worldWidth = worldWidth;
+		this.worldHeight = worldHeight;
+		final Texture texture = layoutTexture = new Texture(textureWidth, textureHeight, Pixmap.Format.RGBA8888);
+		texture.setFilter(Texture.TextureFilter.Nearest, Texture.TextureFilter.Nearest);
+		texture.setWrap(Texture.TextureWrap.ClampToEdge, Texture.TextureWrap.ClampToEdge);
+		invalidateAll();
+		return true;
+	}
+
+	/** Write the layouts of the dirty tiles into the layout texture. */
+	private void upload(@NotNull TileOverlapGrid tiles, @NotNull Texture layoutTexture) {
+		final int x0 = Math.max(dirtyMinX, -BORDER);
+		final int y0 = Math.max(dirtyMinY, -BORDER);
+		final int x1 = Math.min(dirtyMaxX, worldWidth - 1 + BORDER);
+		final int y1 = Math.min(dirtyMaxY, worldHeight - 1 + BORDER);
+		clearDirty();
+		if (x0 > x1 || y0 > y1) {
+			return;
+		}
+
+		final int width = (x1 - x0 + 1) * LAYOUT_TEXELS;
+		final int height = y1 - y0 + 1;
+		ByteBuffer texels = this.upload_texels;
+		if (texels.capacity() < width * height * 4) {
+			texels = this.upload_texels = BufferUtils.newByteBuffer(width * height * 4);
+		}
+		texels.clear();
+
+		final int[] overlaps = this.upload_overlaps;
+		for (int y = y0; y <= y1; y++) {
+			for (int x = x0; x <= x1; x++) {
+				final long layout = tiles.layout(x, y);
+				texels.put((byte) Tile.REGISTRY.denseIndex(tiles.tiles.get(x, y)));
+				texels.put((byte) Tile.layoutBaseVariant(layout));
+				// Overlaps over the limit are not drawn, it can't happen with the current tile heights
+				final int count = Math.min(Tile.layoutOverlaps(tiles, x, y, layout, overlaps), MAX_OVERLAPS);
+				for (int i = 0; i < MAX_OVERLAPS; i++) {
+					int overlap = i < count ? overlaps[i] : 0;
+					assert (overlap >>> 8) < tileCount : "Overlap tile index out of range: " + (overlap >>> 8);
+					if ((overlap >>> 8) >= tileCount) {
+						// Would be clamped to a wrong row of the region table
+						overlap = 0;
+					}
+					texels.put((byte) (overlap >>> 8));
+					texels.put((byte) overlap);
+				}
+			}
+		}
+		texels.flip();
+
+		layoutTexture.bind();
+		Gdx.gl.glPixelStorei(GL20.GL_UNPACK_ALIGNMENT, 1);
+		Gdx.gl.glTexSubImage2D(GL20.GL_TEXTURE_2D, 0, (x0 + BORDER) * LAYOUT_TEXELS, y0 + BORDER, width, height, GL20.GL_RGBA, GL20.GL_UNSIGNED_BYTE, texels);
+	}
+
+	/** Build the table of atlas coordinates and placements of the images of each tile, one row per tile. */
+	private @NotNull Texture createRegionTable() {
+		final Pixmap pixmap = new Pixmap(imageCount * REGION_TEXELS, tileCount, Pixmap.Format.RGBA8888);
+		final ByteBuffer pixels = pixmap.getPixels();
+		for (int tileIndex = 0; tileIndex < tileCount; tileIndex++) {
+			final Tile tile = Tile.REGISTRY.getDense(tileIndex);
+			pixels.position(tileIndex * imageCount * REGION_TEXELS * 4);
+			for (int image = 0; image < imageCount; image++) {
+				if (image < overlapImageOffset) {
+					final TextureRegion region = image < tile.baseVariants() ? tile.baseRegion(image) : null;
+					if (region == null) {
+						putMissingRegion(pixels);
+						continue;
+					}
+					// Same orientation as in RenderUtil.drawTile
+					put16(pixels, region.getU());
+					put16(pixels, region.getV2());
+					put16(pixels, region.getU2());
+					put16(pixels, region.getV());
+					put16(pixels, 0f);
+					put16(pixels, 0f);
+					put16(pixels, 1f);
+					put16(pixels, 1f);
+				} else {
+					final TextureAtlas.AtlasRegion region = tile.overlapRegion(image - overlapImageOffset);
+					if (region == null) {
+						putMissingRegion(pixels);
+						continue;
+					}
+					put16(pixels, region.getU());
+					put16(pixels, region.getV2());
+					put16(pixels, region.getU2());
+					put16(pixels, region.getV());
+					put16(pixels, region.offsetX / region.originalWidth);
+					put16(pixels, region.offsetY / region.originalHeight);
+					put16(pixels, (region.offsetX + region.packedWidth) / region.originalWidth);
+					put16(pixels, (region.offsetY + region.packedHeight) / region.originalHeight);
+				}
+			}
+		}
+		pixels.clear();
+		return createTable(pixmap);
+	}
+
+	private static void putMissingRegion(@NotNull ByteBuffer pixels) {
+		// Placement which no position is in
+		for (int i = 0; i < 4; i++) {
+			put16(pixels, 0f);
+		}
+		put16(pixels, 1f);
+		put16(pixels, 1f);
+		put16(pixels, 0f);
+		put16(pixels, 0f);
+	}
+
+	private static void put16(@NotNull ByteBuffer pixels, float value) {
+		final int fixed = Math.round(Math.max(0f, Math.min(value, 1f)) * 0xFFFF);
+		pixels.put((byte) (fixed >>> 8));
+		pixels.put((byte) fixed);
+	}
+
+	/** Build the table of overlap images to draw for each overlap mask. */
+	private static @NotNull Texture createMaskTable() {
+		final Pixmap pixmap = new Pixmap(256, 1, Pixmap.Format.RGBA8888);
+		final ByteBuffer pixels = pixmap.getPixels();
+		final int[] images = new int[Tile.MAX_OVERLAP_IMAGES];
+		for (int mask = 0; mask < 256; mask++) {
+			final int count = mask == 0 ? 0 : Tile.overlapImages((byte) mask, images);
+			for (int i = 0; i < 4; i++) {
+				pixels.put((byte) (i < count ? images[i] : NO_IMAGE));
+			}
+		}
+		pixels.clear();
+		return createTable(pixmap);
+	}
+
+	private static @NotNull Texture createTable(@NotNull Pixmap pixmap) {
+		final Texture texture = new Texture(pixmap);
+		pixmap.dispose();
+		texture.setFilter(Texture.TextureFilter.Nearest, Texture.TextureFilter.Nearest);
+		texture.setWrap(Texture.TextureWrap.ClampToEdge, Texture.TextureWrap.ClampToEdge);
+		return texture;
+	}
+
+	@Override
+	public void dispose() {
+		if (layoutTexture != null) {
+			layoutTexture.dispose();
+			layoutTexture = null;
+		}
+		regionTable.dispose();
+		maskTable.dispose();
+		quad.dispose();
+		shader.dispose();
+	}
+}
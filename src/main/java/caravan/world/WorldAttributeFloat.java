@@ -9,6 +9,7 @@ import com.badlogic.gdx.math.MathUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
@@ -349,27 +350,23 @@ public final class WorldAttributeFloat {
 		final float max = max();
 
 		final Pixmap pixmap = new Pixmap(width, height, Pixmap.Format.RGB888);
-		pixmap.setBlending(Pixmap.Blending.None);
 
-		final int width = this.width;
-		final int height = this.height;
+		// Rows of the pixmap are tightly packed in the same order as values, so the pixels are written directly
+		final ByteBuffer pixels = pixmap.getPixels();
 		final float[] values = this.values;
-		int i = 0;
-		for (int y = 0; y < height; y++) {
-			for (int x = 0; x < width; x++) {
-				final float index = MathUtils.map(min, max, 0, COLOR_RAMP.length - 1, values[i++]);
-				int indexI = MathUtils.clamp((int) index, 0, COLOR_RAMP.length - 2);
-				float indexProgress = MathUtils.clamp(index - indexI, 0f, 1f);
-				final int fromRGB = COLOR_RAMP[indexI];
-				final int toRGB = COLOR_RAMP[indexI + 1];
-				final int r = Math.round(MathUtils.lerp((fromRGB >> 16) & 0xFF, (toRGB >> 16) & 0xFF, indexProgress));
-				final int g = Math.round(MathUtils.lerp((fromRGB >> 8) & 0xFF, (toRGB >> 8) & 0xFF, indexProgress));
-				final int b = Math.round(MathUtils.lerp(fromRGB & 0xFF, toRGB & 0xFF, indexProgress));
-				final int rgba = (r << 24) | (g << 16) | (b << 8) | 0xFF;
-				pixmap.drawPixel(x, y, rgba);
-			}
+		for (float value : values) {
+			final float index = MathUtils.map(min, max, 0, COLOR_RAMP.length - 1, value);
+			int indexI = MathUtils.clamp((int) index, 0, COLOR_RAMP.length - 2);
+			float indexProgress = MathUtils.clamp(index - indexI, 0f, 1f);
+			final int fromRGB = COLOR_RAMP[indexI];
+			final int toRGB = COLOR_RAMP[indexI + 1];
+			pixels.put((byte) Math.round(MathUtils.lerp((fromRGB >> 16) & 0xFF, (toRGB >> 16) & 0xFF, indexProgress)));
+			pixels.put((byte) Math.round(MathUtils.lerp((fromRGB >> 8) & 0xFF, (toRGB >> 8) & 0xFF, indexProgress)));
+			pixels.put((byte) Math.round(MathUtils.lerp(fromRGB & 0xFF, toRGB & 0xFF, indexProgress)));
 		}
+		pixels.clear();
 
 		PixmapIO.writePNG(Gdx.files.local(name+".png"), pixmap);
+		pixmap.dispose();
 	}
 }
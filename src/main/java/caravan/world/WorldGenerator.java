@@ -4,7 +4,6 @@ import caravan.components.Components;
 import caravan.components.PositionC;
 import caravan.components.TownC;
 import caravan.services.EntitySpawnService;
-import caravan.services.Id;
 import caravan.services.TownSystem;
 import caravan.services.WorldService;
 import caravan.util.CSVWriter;
@@ -14,7 +13,10 @@ import caravan.util.Util;
 import com.badlogic.gdx.math.Interpolation;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.RandomXS128;
+import com.badlogic.gdx.utils.FloatArray;
 import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntIntMap;
+import com.badlogic.gdx.utils.IntMap;
 import com.darkyen.retinazer.Engine;
 import com.darkyen.retinazer.Mapper;
 import org.jetbrains.annotations.NotNull;
@@ -144,7 +146,7 @@ public final class WorldGenerator {
 					rareMetalOccurrence, metalOccurrence, coalOccurrence, jewelOccurrence, stoneOccurrence, limestoneOccurrence);
 
 			if (townIndex % 4 == 3) {
-				simulateSuperInitialWorldPrices(townMapper, townEntities, 100);
+				simulateSuperInitialWorldPrices(townMapper, positionMapper, townEntities, 100);
 			}
 		}
 
@@ -209,6 +211,7 @@ public final class WorldGenerator {
 		// Generate some roads and bridges
 		//TODO
 
+		world.tilesChanged();
 		engine.flush();
 	}
 
@@ -221,6 +224,9 @@ public final class WorldGenerator {
 		}
 		dummyTown.prices.scale(1f / townEntities.size);
 
+		// Each thread needs its own environment, as it caches the production results
+		final ThreadLocal<Environment> environments = ThreadLocal.withInitial(Environment::new);
+		final ThreadLocal<float[]> profits = ThreadLocal.withInitial(() -> new float[Production.REGISTRY.count()]);
 		townPlacementScore.fillParallel((x, y, v) -> {
 			final float alt = altitude.get(x, y);
 			if (alt <= 0f) {
@@ -228,14 +234,15 @@ public final class WorldGenerator {
 				return -100f;
 			}
 
-			extractEnvironment(dummyTown.environment, x, y, precipitation, altitude, forestMap, pastureMap, fishMap, temperature,
+			final Environment environment = environments.get();
+			extractEnvironment(environment, x, y, precipitation, altitude, forestMap, pastureMap, fishMap, temperature,
 					rareMetalOccurrence, metalOccurrence, coalOccurrence, jewelOccurrence, stoneOccurrence, limestoneOccurrence);
 
+			final float[] productionProfits = profits.get();
+			TownSystem.productionProfits(dummyTown.prices, environment, productionProfits);
 			float profit = 0;
-			final Id.Registry<Production> registry = Production.REGISTRY;
-			for (int i = 0; i < registry.count(); i++) {
-				final Production production = registry.getDense(i);
-				profit += Math.max(TownSystem.productionProfit(dummyTown, production), 0);
+			for (float productionProfit : productionProfits) {
+				profit += Math.max(productionProfit, 0);
 			}
 
 			return profit;
@@ -272,6 +279,7 @@ public final class WorldGenerator {
 		environment.jewelOccurrence = jewelOccurrence.getKernelMax(townX, townY, MINERAL_REACH_KERNEL, MINERAL_REACH_KERNEL_SIZE, MINERAL_REACH_KERNEL_SIZE);
 		environment.stoneOccurrence = stoneOccurrence.getKernelMax(townX, townY, MINERAL_REACH_KERNEL, MINERAL_REACH_KERNEL_SIZE, MINERAL_REACH_KERNEL_SIZE);
 		environment.limestoneOccurrence = limestoneOccurrence.getKernelMax(townX, townY, MINERAL_REACH_KERNEL, MINERAL_REACH_KERNEL_SIZE, MINERAL_REACH_KERNEL_SIZE);
+		environment.changed();
 	}
 
 	public static void generatePlayerCaravan(@NotNull Engine engine) {
@@ -325,19 +333,39 @@ public final class WorldGenerator {
 		engine.flush();
 	}
 
-	public static void simulateSuperInitialWorldPrices(@NotNull Mapper<TownC> town, @NotNull IntArray townEntities, int iterations) {
+	/** How many nearest towns does each town trade with in {@link #simulateSuperInitialWorldPrices}. */
+	private static final int SUPER_INITIAL_TRADE_NEIGHBORS = 6;
+	/** Minimum amount of iterations of {@link #simulateSuperInitialWorldPrices}, to let the newly placed towns settle. */
+	private static final int SUPER_INITIAL_MIN_ITERATIONS = 10;
+	/** {@link #simulateSuperInitialWorldPrices} stops when the average balance change
+	 * ({@link PriceList#balanceDifference(PriceList)}) per town and merchandise in a single iteration drops below this. */
+	private static final float SUPER_INITIAL_CONVERGENCE_THRESHOLD = 1f;
+
+	/** Trade between towns and their nearest neighbors until the prices stabilize or the iterations run out. */
+	public static void simulateSuperInitialWorldPrices(@NotNull Mapper<TownC> town, @NotNull Mapper<PositionC> position, @NotNull IntArray townEntities, int iterations) {
+		final int townCount = townEntities.size;
+		final int[][] tradeNeighbors = nearestTowns(position, townEntities, SUPER_INITIAL_TRADE_NEIGHBORS);
+		final IntArray tradeOrder = new IntArray(townCount);
+		final PriceList[] lastPrices = new PriceList[townCount];
+		for (int ti = 0; ti < townCount; ti++) {
+			tradeOrder.add(ti);
+			lastPrices[ti] = new PriceList();
+			lastPrices[ti].set(town.get(townEntities.get(ti)).prices);
+		}
+
 		for (int i = 0; i < iterations; i++) {
 			// Update internal economy and production
-			for (int ti = 0; ti < townEntities.size; ti++) {
+			for (int ti = 0; ti < townCount; ti++) {
 				simulateInternalEconomy(town.get(townEntities.get(ti)));
 			}
 
 			// Simulate trade
-			townEntities.shuffle();
-			for (int ti0 = 0; ti0 < townEntities.size; ti0++) {
+			tradeOrder.shuffle();
+			for (int oi = 0; oi < townCount; oi++) {
+				final int ti0 = tradeOrder.get(oi);
 				final TownC localTown = town.get(townEntities.get(ti0));
 
-				for (int ti1 = 0; ti1 < townEntities.size; ti1++) {
+				for (int ti1 : tradeNeighbors[ti0]) {
 					final TownC otherTown = town.get(townEntities.get(ti1));
 
 					arbitrageTowns(localTown, otherTown, 5f);
@@ -347,32 +375,109 @@ public final class WorldGenerator {
 
 			// Apply communism to reset initial price instability
 			int totalMoney = 0;
-			for (int ti = 0; ti < townEntities.size; ti++) {
+			for (int ti = 0; ti < townCount; ti++) {
 				totalMoney += town.get(townEntities.get(ti)).money;
 			}
-			final int townMoney = (totalMoney + townEntities.size - 1) / townEntities.size;
-			for (int ti = 0; ti < townEntities.size; ti++) {
+			final int townMoney = (totalMoney + townCount - 1) / townCount;
+			for (int ti = 0; ti < townCount; ti++) {
 				final TownC localTown = town.get(townEntities.get(ti));
 				localTown.money = townMoney;
 				localTown.wealth = 0;
 			}
+
+			// Check whether the prices have stabilized
+			long balanceChange = 0;
+			for (int ti = 0; ti < townCount; ti++) {
+				final PriceList prices = town.get(townEntities.get(ti)).prices;
+				balanceChange += prices.balanceDifference(lastPrices[ti]);
+				lastPrices[ti].set(prices);
+			}
+			if (i + 1 >= SUPER_INITIAL_MIN_ITERATIONS && balanceChange < SUPER_INITIAL_CONVERGENCE_THRESHOLD * townCount * Merchandise.COUNT) {
+				break;
+			}
 		}
 	}
 
-	public static void simulateInitialWorldPrices(@NotNull Engine engine, int iterations, boolean dumpResults) {
+	/** For each town find up to k nearest other towns.
+	 * @return for each index into townEntities, indices into townEntities of its nearest towns, nearest first */
+	private static int @NotNull [] @NotNull [] nearestTowns(@NotNull Mapper<PositionC> position, @NotNull IntArray townEntities, int k) {
+		final int townCount = townEntities.size;
+		final int neighborCount = Math.min(k, townCount - 1);
+		final int[][] result = new int[townCount][];
+		final float[] distances = new float[neighborCount];
+
+		for (int t0 = 0; t0 < townCount; t0++) {
+			final PositionC townPos = position.get(townEntities.get(t0));
+			final int[] nearest = new int[neighborCount];
+			int found = 0;
+
+			for (int t1 = 0; t1 < townCount; t1++) {
+				if (t1 == t0) {
+					continue;
+				}
+				final float distance = PositionC.manhattanDistance(townPos, position.get(townEntities.get(t1)));
+				if (found == neighborCount && (found == 0 || distance >= distances[found - 1])) {
+					continue;
+				}
+
+				// Insertion sort, dropping the farthest when full
+				int i = found < neighborCount ? found++ : found - 1;
+				while (i > 0 && distances[i - 1] > distance) {
+					distances[i] = distances[i - 1];
+					nearest[i] = nearest[i - 1];
+					i--;
+				}
+				distances[i] = distance;
+				nearest[i] = t1;
+			}
+
+			result[t0] = nearest;
+		}
+
+		return result;
+	}
+
+	/** Minimum amount of iterations of each phase of {@link #simulateInitialWorldPrices}. */
+	private static final int INITIAL_MIN_ITERATIONS = 10;
+	/** Phase of {@link #simulateInitialWorldPrices} ends when its convergence metric drops below this. */
+	private static final float INITIAL_CONVERGENCE_THRESHOLD = 0.5f;
+
+	/** Simulate the economy and trade between neighboring towns, until it stabilizes or the iterations run out.
+	 * The first half of iterations also evens out the town money, to reset initial price instability.
+	 * Each half ends early when the convergence metric (average supply/demand balance change per town and merchandise,
+	 * plus relative change of town money) drops below {@link #INITIAL_CONVERGENCE_THRESHOLD}.
+	 * @return the convergence metric of each performed iteration */
+	public static @NotNull FloatArray simulateInitialWorldPrices(@NotNull Engine engine, int iterations, boolean dumpResults) {
 		final Mapper<TownC> town = engine.getMapper(TownC.class);
 		final Mapper<PositionC> position = engine.getMapper(PositionC.class);
 		final IntArray townEntities = engine.getEntities(Components.DOMAIN.familyWith(TownC.class, PositionC.class)).getIndices();
+		final int townCount = townEntities.size;
+		final FloatArray convergence = new FloatArray(iterations);
+
+		// Indexed by entity, because the townEntities get shuffled
+		final IntMap<PriceList> lastPrices = new IntMap<>(townCount);
+		final IntIntMap lastMoney = new IntIntMap(townCount);
+		for (int ti = 0; ti < townCount; ti++) {
+			final int townEntity = townEntities.get(ti);
+			final TownC localTown = town.get(townEntity);
+			final PriceList prices = new PriceList();
+			prices.set(localTown.prices);
+			lastPrices.put(townEntity, prices);
+			lastMoney.put(townEntity, localTown.money);
+		}
 
-		for (int i = 0; i < iterations; i++) {
+		int phaseStart = 0;
+		boolean communism = true;
+		int i = 0;
+		while (i < iterations) {
 			// Update internal economy and production
-			for (int ti = 0; ti < townEntities.size; ti++) {
+			for (int ti = 0; ti < townCount; ti++) {
 				simulateInternalEconomy(town.get(townEntities.get(ti)));
 			}
 
 			// Simulate trade
 			townEntities.shuffle();
-			for (int ti = 0; ti < townEntities.size; ti++) {
+			for (int ti = 0; ti < townCount; ti++) {
 				final int townEntity = townEntities.get(ti);
 				final TownC localTown = town.get(townEntity);
 				final PositionC localTownPosition = position.get(townEntity);
@@ -387,15 +492,15 @@ public final class WorldGenerator {
 				}
 			}
 
-			if (i < iterations / 2) {
+			if (communism) {
 				// Apply communism to reset initial price instability
 				int totalMoney = 0;
-				for (int ti = 0; ti < townEntities.size; ti++) {
+				for (int ti = 0; ti < townCount; ti++) {
 					final TownC localTown = town.get(townEntities.get(ti));
 					totalMoney += localTown.money;
 				}
-				final int townMoney = (totalMoney + townEntities.size - 1) / townEntities.size;
-				for (int ti = 0; ti < townEntities.size; ti++) {
+				final int townMoney = (totalMoney + townCount - 1) / townCount;
+				for (int ti = 0; ti < townCount; ti++) {
 					final TownC localTown = town.get(townEntities.get(ti));
 					localTown.money = townMoney;
 					localTown.wealth = 0;
@@ -405,11 +510,39 @@ public final class WorldGenerator {
 			if (dumpResults && (i % 10) == 0) {
 				dumpTownData(i, town, position, townEntities);
 			}
+
+			// Measure how much has changed
+			long balanceChange = 0;
+			long moneyChange = 0;
+			long totalMoney = 0;
+			for (int ti = 0; ti < townCount; ti++) {
+				final int townEntity = townEntities.get(ti);
+				final TownC localTown = town.get(townEntity);
+				final PriceList prices = lastPrices.get(townEntity);
+				balanceChange += localTown.prices.balanceDifference(prices);
+				prices.set(localTown.prices);
+				moneyChange += Math.abs(localTown.money - lastMoney.get(townEntity, 0));
+				totalMoney += Math.abs(localTown.money);
+				lastMoney.put(townEntity, localTown.money);
+			}
+			final float metric = (float) balanceChange / Math.max(townCount * Merchandise.COUNT, 1) + (float) moneyChange / Math.max(totalMoney, 1L);
+			convergence.add(metric);
+			i++;
+
+			final boolean converged = i - phaseStart >= INITIAL_MIN_ITERATIONS && metric < INITIAL_CONVERGENCE_THRESHOLD;
+			if (communism && (converged || i >= iterations / 2)) {
+				communism = false;
+				phaseStart = i;
+			} else if (!communism && converged) {
+				break;
+			}
 		}
 
 		if (dumpResults) {
-			dumpTownData(iterations, town, position, townEntities);
+			dumpTownData(i, town, position, townEntities);
 		}
+
+		return convergence;
 	}
 
 	/** Single direction arbitrage, goods moving from localTown to otherTown */